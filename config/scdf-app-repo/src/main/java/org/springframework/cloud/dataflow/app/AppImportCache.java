@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Renders the app import file, each 'key=filename' entry of the repository index 'app-info.properties' as
+ * 'key=baseUrl/filename', once per base URL and keeps the bytes with a strong ETag computed from them.
+ * <p>
+ * The modification time and length of the index are checked on each request, and every rendering is dropped as soon
+ * as they change or {@link #invalidate()} is called. Only the most recently used base URLs are kept, since the base URL
+ * comes from the request.
+ **/
+public class AppImportCache {
+
+	private static final int MAX_BASE_URLS = 16;
+
+	private final Resource appInfo;
+
+	private final Map<String, AppImport> imports = new LinkedHashMap<String, AppImport>(MAX_BASE_URLS, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, AppImport> eldest) {
+			return size() > MAX_BASE_URLS;
+		}
+	};
+
+	private long lastModified;
+
+	private long length;
+
+	/**
+	 * @param appInfo the repository index
+	 */
+	public AppImportCache(Resource appInfo) {
+		this.appInfo = appInfo;
+	}
+
+	/**
+	 * @return the import file for the base URL, or null if there is no index
+	 */
+	public synchronized AppImport get(String baseUrl) throws IOException {
+		if (!appInfo.exists()) {
+			imports.clear();
+			return null;
+		}
+		long lastModified = appInfo.lastModified();
+		long length = appInfo.contentLength();
+		if (lastModified != this.lastModified || length != this.length) {
+			imports.clear();
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+		AppImport appImport = imports.get(baseUrl);
+		if (appImport == null) {
+			appImport = render(baseUrl);
+			imports.put(baseUrl, appImport);
+		}
+		return appImport;
+	}
+
+	/**
+	 * Drop every rendering, e.g. once the index has been rewritten.
+	 */
+	public synchronized void invalidate() {
+		imports.clear();
+	}
+
+	private AppImport render(String baseUrl) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = appInfo.getInputStream()) {
+			properties.load(in);
+		}
+		Map<String, String> entries = new TreeMap<>();
+		properties.stringPropertyNames().forEach(key -> entries.put(key, properties.getProperty(key)));
+		StringBuilder contents = new StringBuilder();
+		entries.forEach((key, filename) -> contents.append(String.format("%s=%s/%s\n", key, baseUrl, filename)));
+		byte[] bytes = contents.toString().getBytes(UTF_8);
+		return new AppImport(bytes, "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"");
+	}
+
+	/**
+	 * A rendered import file.
+	 */
+	public static class AppImport {
+
+		private final byte[] content;
+
+		private final String etag;
+
+		AppImport(byte[] content, String etag) {
+			this.content = content;
+			this.etag = etag;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * @return the strong entity tag, quoted
+		 */
+		public String getEtag() {
+			return etag;
+		}
+	}
+}
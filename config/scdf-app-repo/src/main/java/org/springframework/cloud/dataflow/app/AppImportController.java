@@ -16,61 +16,65 @@
 
 package org.springframework.cloud.dataflow.app;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
-import org.apache.tomcat.util.http.fileupload.IOUtils;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Serves the app import file from the {@link AppImportCache}. Clients that send the ETag of their copy in
+ * 'If-None-Match' get a 304 response while the index is unchanged.
+ *
  * @author David Turanski
  **/
 
 @RestController
 public class AppImportController {
 
-	@GetMapping(value = "/import")
-	public void downloadAppImport(HttpServletRequest request, HttpServletResponse response) {
-
-		Resource appInfo = new ClassPathResource("/static/app-info.properties");
-
-		if (appInfo.exists()) {
-			String baseUrl = buildBaseUrl(request);
-			StringBuilder contents = new StringBuilder();
-			try {
+	@Autowired
+	private AppImportCache appImportCache;
 
-				Properties properties = new Properties();
-				properties.load(appInfo.getInputStream());
+	@Value("${app-import.cache-max-age:0}")
+	private long cacheMaxAge;
 
-				properties.entrySet().forEach(e -> {
-					contents.append(String.format("%s=%s/%s\n",e.getKey(), baseUrl, e.getValue()));
-				});
+	@GetMapping(value = "/import")
+	public void downloadAppImport(HttpServletRequest request, HttpServletResponse response) {
+		try {
+			AppImportCache.AppImport appImport = appImportCache.get(buildBaseUrl(request));
+			if (appImport == null) {
+				return;
+			}
 
-				InputStream appImport = new ByteArrayInputStream(contents.toString().getBytes());
+			response.setHeader("Cache-Control", cacheControl().getHeaderValue());
+			if (new ServletWebRequest(request, response).checkNotModified(appImport.getEtag())) {
+				return;
+			}
 
 			response.setContentType("text/plain");
 			response.addHeader("Content-Disposition", "attachment; filename=app-import.properties");
+			response.setContentLength(appImport.getContent().length);
 
-				IOUtils.copy(appImport, response.getOutputStream());
-				response.getOutputStream().flush();
-			}
-			catch (IOException ex) {
-				ex.printStackTrace();
-			}
+			response.getOutputStream().write(appImport.getContent());
+			response.getOutputStream().flush();
 		}
+		catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return 'no-cache', so clients revalidate every time, unless 'app-import.cache-max-age' is set in seconds
+	 */
+	private CacheControl cacheControl() {
+		return cacheMaxAge > 0 ? CacheControl.maxAge(cacheMaxAge, TimeUnit.SECONDS).mustRevalidate() :
+			CacheControl.noCache();
 	}
 
 	private String buildBaseUrl(HttpServletRequest request) {
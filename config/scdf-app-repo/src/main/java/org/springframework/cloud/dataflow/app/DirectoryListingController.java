@@ -16,35 +16,107 @@
 
 package org.springframework.cloud.dataflow.app;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 
-import java.io.IOException;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
 
 /**
+ * Lists the jars in the repository from the {@link RepositoryWatcher}, as HTML at '/repo' or as JSON for requests that
+ * accept 'application/json', a page at a time. 'type' and 'name' are app type and name patterns, which may contain '*'
+ * wildcards. The ETag follows the listing version and the query, so clients get a 304 response while the page they
+ * asked for is unchanged.
+ *
  * @author David Turanski
  **/
 @Controller
 public class DirectoryListingController {
 
+	static final int DEFAULT_PAGE_SIZE = 100;
+
+	static final int MAX_PAGE_SIZE = 1000;
+
+	private final long started = System.currentTimeMillis();
+
+	@Autowired
+	private RepositoryWatcher repositoryWatcher;
+
 	@GetMapping(value = "/repo")
-	public String list(Model model) {
-		try {
-			Resource[] jars = (new PathMatchingResourcePatternResolver(getClass().getClassLoader())).getResources(
-				"classpath:static/*.jar");
-			model.addAttribute("files",
-				Stream.of(jars).map(Resource::getFilename).sorted().collect(Collectors.toList()));
+	public String list(@RequestParam(defaultValue = "") String type, @RequestParam(defaultValue = "") String name,
+		@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+		Model model, WebRequest request, HttpServletResponse response) {
+		RepositoryListing listing = repositoryWatcher.getListing();
+		Query query = new Query(type, name, page, size);
+		if (notModified(request, response, listing, "html", query)) {
+			return null;
+		}
+		model.addAttribute("page", query.find(listing));
+		model.addAttribute("type", type);
+		model.addAttribute("name", name);
+		return "repo";
+	}
+
+	@GetMapping(value = "/repo", produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public RepositoryListing.Page listJson(@RequestParam(defaultValue = "") String type,
+		@RequestParam(defaultValue = "") String name, @RequestParam(defaultValue = "0") int page,
+		@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size, WebRequest request,
+		HttpServletResponse response) {
+		RepositoryListing listing = repositoryWatcher.getListing();
+		Query query = new Query(type, name, page, size);
+		return notModified(request, response, listing, "json", query) ? null : query.find(listing);
+	}
 
+	/**
+	 * The ETag is made from the start time as well, since listing versions start again with every run, and from a
+	 * digest of the query, since pages and filters of the same listing differ.
+	 */
+	private boolean notModified(WebRequest request, HttpServletResponse response, RepositoryListing listing,
+		String variant, Query query) {
+		response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+		response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		String etag = String.format("\"%s-%x-%x-%s\"", variant, started, listing.getVersion(),
+			DigestUtils.md5DigestAsHex(query.toString().getBytes(StandardCharsets.UTF_8)));
+		return request.checkNotModified(etag);
+	}
+
+	/**
+	 * The filters and page of a request, with the page and size brought into range.
+	 */
+	private static class Query {
+
+		private final String type;
+
+		private final String name;
+
+		private final int page;
+
+		private final int size;
+
+		Query(String type, String name, int page, int size) {
+			this.type = type.trim();
+			this.name = name.trim();
+			this.page = Math.max(0, page);
+			this.size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
 		}
-		catch (IOException e) {
-			e.printStackTrace();
+
+		RepositoryListing.Page find(RepositoryListing listing) {
+			return listing.find(type, name, page, size);
 		}
 
-		return "repo";
+		@Override
+		public String toString() {
+			return String.format("type=%s&name=%s&page=%d&size=%d", type, name, page, size);
+		}
 	}
 }
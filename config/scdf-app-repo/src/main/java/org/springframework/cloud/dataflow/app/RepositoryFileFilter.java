@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Serves the files of the repository directory, e.g. the jars downloaded by the app tool into 'local.repo.directory',
+ * straight from disk at the root URL. Requests for anything else, including files missing from the directory, go on
+ * to the rest of the application, so the jars packaged into 'classpath:static/' are the fallback.
+ * <p>
+ * The body is handed to Tomcat's sendfile support where the connector offers it, so the kernel copies the file to the
+ * socket. Otherwise it is copied with {@link FileChannel#transferTo}. Responses carry 'Content-Length',
+ * 'Last-Modified' and an 'ETag' made from the size and modification time. A single 'Range' is honored, subject to
+ * 'If-Range', and conditional requests with 'If-None-Match' or 'If-Modified-Since' are answered with 304.
+ * <p>
+ * Only plain file names of jars and of the index files in {@link #INDEX_FILES} are served. The app tool's journal,
+ * download state, lock and temporary files, unfinished '.part' downloads and names with path separators are not.
+ **/
+public class RepositoryFileFilter extends OncePerRequestFilter {
+
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	static final Set<String> INDEX_FILES = Collections.singleton("app-info.properties");
+
+	private static final String JAR_SUFFIX = ".jar";
+
+	private final Path directory;
+
+	/**
+	 * @param directory the repository directory
+	 */
+	public RepositoryFileFilter(Path directory) {
+		this.directory = directory.toAbsolutePath().normalize();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+		throws ServletException, IOException {
+		boolean head = "HEAD".equals(request.getMethod());
+		Path file = head || "GET".equals(request.getMethod()) ? resolve(request) : null;
+		BasicFileAttributes attributes = null;
+		if (file != null) {
+			try {
+				attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			}
+			catch (IOException e) {
+				// not in the repository directory
+			}
+		}
+		if (attributes == null || !attributes.isRegularFile()) {
+			chain.doFilter(request, response);
+			return;
+		}
+		serve(request, response, file, attributes, head);
+	}
+
+	private void serve(HttpServletRequest request, HttpServletResponse response, Path file,
+		BasicFileAttributes attributes, boolean head) throws IOException {
+		long length = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+		String etag = String.format("\"%x-%x\"", length, lastModified);
+
+		response.setHeader(HttpHeaders.ETAG, etag);
+		response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		if (notModified(request, etag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		long start = 0L;
+		long end = length;
+		String range = request.getHeader(HttpHeaders.RANGE);
+		if (range != null && ifRangeMatches(request, etag, lastModified)) {
+			long[] bounds = parseRange(range, length);
+			if (bounds == null) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("bytes */%d", length));
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (bounds.length > 0) {
+				start = bounds[0];
+				end = bounds[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end - 1,
+					length));
+			}
+		}
+
+		String contentType = request.getServletContext().getMimeType(file.getFileName().toString());
+		response.setContentType(file.getFileName().toString().endsWith(JAR_SUFFIX) ? "application/java-archive" :
+			contentType != null ? contentType : "application/octet-stream");
+		response.setContentLengthLong(end - start);
+		if (head || end == start) {
+			return;
+		}
+
+		if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, file.toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end);
+			return;
+		}
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			while (position < end) {
+				long transferred = in.transferTo(position, end - position, out);
+				if (transferred <= 0) {
+					break;
+				}
+				position += transferred;
+			}
+		}
+	}
+
+	/**
+	 * @return the file in the repository directory named by the request path, or null if the path is not the plain
+	 * file name of a jar or an index file
+	 */
+	private Path resolve(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		String filename;
+		try {
+			filename = UriUtils.decode(path.startsWith("/") ? path.substring(1) : path, UTF_8);
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (!(filename.endsWith(JAR_SUFFIX) || INDEX_FILES.contains(filename)) || filename.startsWith(".")
+			|| filename.indexOf('/') >= 0 || filename.indexOf('\\') >= 0 || filename.indexOf('\0') >= 0) {
+			return null;
+		}
+		Path file = directory.resolve(filename).normalize();
+		return directory.equals(file.getParent()) ? file : null;
+	}
+
+	private boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String candidate : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+				candidate = candidate.trim();
+				if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+		return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+	}
+
+	/**
+	 * @return true if there is no 'If-Range', or it names the current version by its ETag or modification time
+	 */
+	private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"")) {
+			return ifRange.equals(etag);
+		}
+		return dateHeader(request, HttpHeaders.IF_RANGE) == lastModified;
+	}
+
+	/**
+	 * Parse a 'Range' header. Only a single byte range is honored; the whole file is served for anything else.
+	 * @return the start and exclusive end of the range, an empty array to serve the whole file, or null if the range
+	 * cannot be satisfied
+	 */
+	static long[] parseRange(String range, long length) {
+		String value = range.trim();
+		if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+			return new long[0];
+		}
+		value = value.substring("bytes=".length()).trim();
+		int dash = value.indexOf('-');
+		if (dash < 0) {
+			return new long[0];
+		}
+		try {
+			String first = value.substring(0, dash).trim();
+			String last = value.substring(dash + 1).trim();
+			long start;
+			long end;
+			if (first.isEmpty()) {
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0) {
+					return null;
+				}
+				start = Math.max(0L, length - suffix);
+				end = length;
+			}
+			else {
+				start = Long.parseLong(first);
+				end = last.isEmpty() ? length : Math.min(length, Long.parseLong(last) + 1);
+				if (end <= start) {
+					return start >= length ? null : new long[0];
+				}
+			}
+			return start < length ? new long[] { start, end } : null;
+		}
+		catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+	private static long dateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		}
+		catch (IllegalArgumentException e) {
+			return -1L;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import org.springframework.util.PatternMatchUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * An immutable snapshot of the jars in the repository, sorted by file name. Changes produce a new snapshot with the
+ * next version, so readers always see a consistent listing.
+ **/
+public class RepositoryListing {
+
+	static final RepositoryListing EMPTY = new RepositoryListing(Collections.emptyNavigableMap(), 0L);
+
+	private final NavigableMap<String, Artifact> artifacts;
+
+	private final long version;
+
+	private RepositoryListing(NavigableMap<String, Artifact> artifacts, long version) {
+		this.artifacts = Collections.unmodifiableNavigableMap(artifacts);
+		this.version = version;
+	}
+
+	/**
+	 * @return a listing of just the artifacts, with the next version
+	 */
+	RepositoryListing replacedBy(Collection<Artifact> artifacts) {
+		NavigableMap<String, Artifact> byFilename = new TreeMap<>();
+		artifacts.forEach(artifact -> byFilename.put(artifact.getFilename(), artifact));
+		return new RepositoryListing(byFilename, version + 1);
+	}
+
+	/**
+	 * @param updated the artifacts added or changed
+	 * @param removed the file names of the artifacts removed
+	 * @return a listing with the changes applied and the next version, or this listing if nothing changed
+	 */
+	RepositoryListing with(Collection<Artifact> updated, Collection<String> removed) {
+		NavigableMap<String, Artifact> byFilename = new TreeMap<>(artifacts);
+		boolean changed = false;
+		for (Artifact artifact : updated) {
+			changed |= !artifact.equals(byFilename.put(artifact.getFilename(), artifact));
+		}
+		for (String filename : removed) {
+			changed |= byFilename.remove(filename) != null;
+		}
+		return changed ? new RepositoryListing(byFilename, version + 1) : this;
+	}
+
+	/**
+	 * @return a listing with the function applied to every artifact and the next version, or this listing if nothing
+	 * changed
+	 */
+	RepositoryListing map(UnaryOperator<Artifact> function) {
+		NavigableMap<String, Artifact> byFilename = new TreeMap<>();
+		boolean changed = false;
+		for (Artifact artifact : artifacts.values()) {
+			Artifact mapped = function.apply(artifact);
+			changed |= !mapped.equals(artifact);
+			byFilename.put(mapped.getFilename(), mapped);
+		}
+		return changed ? new RepositoryListing(byFilename, version + 1) : this;
+	}
+
+	/**
+	 * @return the artifacts by file name
+	 */
+	public Map<String, Artifact> getArtifacts() {
+		return artifacts;
+	}
+
+	public List<String> getFilenames() {
+		return new ArrayList<>(artifacts.keySet());
+	}
+
+	/**
+	 * @return a number that increases with every change
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param type an app type pattern, which may contain '*' wildcards, or empty for all
+	 * @param name an app name pattern, which may contain '*' wildcards, or empty for all
+	 * @param page the page number, from 0
+	 * @param size the number of artifacts per page
+	 * @return a page of the matching artifacts
+	 */
+	public Page find(String type, String name, int page, int size) {
+		List<Artifact> matching = new ArrayList<>();
+		for (Artifact artifact : artifacts.values()) {
+			if (matches(type, artifact.getType()) && matches(name, artifact.getName())) {
+				matching.add(artifact);
+			}
+		}
+		int from = (int) Math.min((long) page * size, matching.size());
+		int to = Math.min(from + size, matching.size());
+		return new Page(new ArrayList<>(matching.subList(from, to)), page, size, matching.size(), version);
+	}
+
+	/**
+	 * @return true if the pattern is empty, or the value is known and matches it
+	 */
+	private static boolean matches(String pattern, String value) {
+		return !StringUtils.hasText(pattern) || (value != null && PatternMatchUtils.simpleMatch(pattern, value));
+	}
+
+	/**
+	 * A jar in the repository.
+	 */
+	public static class Artifact {
+
+		private final String filename;
+
+		private final long size;
+
+		private final long lastModified;
+
+		private final String sha1;
+
+		private final String type;
+
+		private final String name;
+
+		Artifact(String filename, long size, long lastModified) {
+			this(filename, size, lastModified, null, null);
+		}
+
+		/**
+		 * @param sha1 the SHA-1 digest of the content, or null if not known yet
+		 * @param key  the key of the artifact in the repository index, e.g. 'sink.log', or null if not indexed
+		 */
+		Artifact(String filename, long size, long lastModified, String sha1, String key) {
+			this.filename = filename;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sha1 = sha1;
+			String[] parts = key == null ? new String[2] : StringUtils.delimitedListToStringArray(key + ".", ".");
+			this.type = parts[0];
+			this.name = parts[1];
+		}
+
+		public String getFilename() {
+			return filename;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return the SHA-1 digest of the content, or null until it has been computed
+		 */
+		public String getSha1() {
+			return sha1;
+		}
+
+		/**
+		 * @return the app type from the repository index, or null if not indexed
+		 */
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * @return the app name from the repository index, or null if not indexed
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return true if the other artifact is for the same content, whether or not its details are known
+		 */
+		boolean sameContent(Artifact other) {
+			return other != null && filename.equals(other.filename) && size == other.size
+				&& lastModified == other.lastModified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Artifact)) {
+				return false;
+			}
+			Artifact other = (Artifact) o;
+			return sameContent(other) && Objects.equals(sha1, other.sha1) && Objects.equals(type, other.type)
+				&& Objects.equals(name, other.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return filename.hashCode() * 31 + Long.hashCode(size) * 17 + Long.hashCode(lastModified);
+		}
+	}
+
+	/**
+	 * A page of a listing.
+	 */
+	public static class Page {
+
+		private final List<Artifact> artifacts;
+
+		private final int number;
+
+		private final int size;
+
+		private final int totalElements;
+
+		private final long version;
+
+		Page(List<Artifact> artifacts, int number, int size, int totalElements, long version) {
+			this.artifacts = Collections.unmodifiableList(artifacts);
+			this.number = number;
+			this.size = size;
+			this.totalElements = totalElements;
+			this.version = version;
+		}
+
+		public List<Artifact> getArtifacts() {
+			return artifacts;
+		}
+
+		/**
+		 * @return the page number, from 0
+		 */
+		public int getNumber() {
+			return number;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the number of matching artifacts on all pages
+		 */
+		public int getTotalElements() {
+			return totalElements;
+		}
+
+		public int getTotalPages() {
+			return (totalElements + size - 1) / size;
+		}
+
+		/**
+		 * @return the version of the listing the page was taken from
+		 */
+		public long getVersion() {
+			return version;
+		}
+	}
+}
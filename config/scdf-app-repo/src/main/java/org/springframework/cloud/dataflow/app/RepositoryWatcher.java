@@ -0,0 +1,409 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the {@link RepositoryListing} of the repository directory current while the server runs, so jars added or
+ * removed by the app tool show up in '/repo' and '/import' without a restart.
+ * <p>
+ * The directory is scanned once at start and then watched with a {@link WatchService}. Only the files named in the
+ * events are read again, and the new listing is published with a single volatile write, so requests see either the
+ * old or the new listing, never one half applied. Events already queued are applied together. A full rescan only
+ * happens if the watch service reports that it dropped events. A change to 'app-info.properties' invalidates the
+ * {@link AppImportCache}.
+ * <p>
+ * Each artifact carries the app type and name it is indexed under in 'app-info.properties' and the SHA-1 digest of its
+ * content. The digest recorded by the app tool in 'download-state.properties' is used when the size matches; any other
+ * is computed on a background thread and kept for as long as the size and modification time of the file stay the
+ * same. Both files are read again when they change, without rescanning the directory.
+ * <p>
+ * Without a repository directory, the jars packaged into 'classpath:static/' are listed once, since they cannot change.
+ **/
+public class RepositoryWatcher {
+
+	private static final Log logger = LogFactory.getLog(RepositoryWatcher.class);
+
+	private static final String APP_INFO = "app-info.properties";
+
+	private static final String DOWNLOAD_STATE = "download-state.properties";
+
+	private static final int CHECKSUM_BATCH_SIZE = 100;
+
+	private final Path directory;
+
+	private final AppImportCache appImportCache;
+
+	private volatile RepositoryListing listing = RepositoryListing.EMPTY;
+
+	private WatchService watchService;
+
+	private volatile Map<String, String> keys = Collections.emptyMap();
+
+	private volatile Map<String, RepositoryListing.Artifact> recordedChecksums = Collections.emptyMap();
+
+	private final Map<String, RepositoryListing.Artifact> computedChecksums = new ConcurrentHashMap<>();
+
+	private final ExecutorService checksummer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "repository-checksum");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicBoolean checksumsQueued = new AtomicBoolean();
+
+	/**
+	 * @param directory      the repository directory, or null to list the jars in 'classpath:static/'
+	 * @param appImportCache invalidated when the index changes
+	 */
+	public RepositoryWatcher(Path directory, AppImportCache appImportCache) {
+		this.directory = directory;
+		this.appImportCache = appImportCache;
+	}
+
+	public RepositoryListing getListing() {
+		return listing;
+	}
+
+	public void start() throws IOException {
+		if (directory == null) {
+			readIndex();
+			readDownloadState();
+			publish(scanClasspath());
+			return;
+		}
+		// register before scanning, so a change made during the scan is not missed
+		watchService = directory.getFileSystem().newWatchService();
+		directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+		readIndex();
+		readDownloadState();
+		publish(scan());
+		Thread watcher = new Thread(this::watch, "repository-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	public void stop() throws IOException {
+		checksummer.shutdownNow();
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
+
+	private void watch() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			}
+			catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			Set<String> changed = new HashSet<>();
+			boolean overflow = false;
+			boolean indexChanged = false;
+			boolean downloadStateChanged = false;
+			while (key != null) {
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						overflow = true;
+						continue;
+					}
+					String filename = event.context().toString();
+					if (APP_INFO.equals(filename)) {
+						indexChanged = true;
+					}
+					else if (DOWNLOAD_STATE.equals(filename)) {
+						downloadStateChanged = true;
+					}
+					else if (isArtifact(filename)) {
+						changed.add(filename);
+					}
+				}
+				if (!key.reset()) {
+					logger.warn(String.format("%s can no longer be watched, the listing will not change", directory));
+					return;
+				}
+				key = watchService.poll();
+			}
+			try {
+				if (indexChanged || overflow) {
+					readIndex();
+				}
+				if (downloadStateChanged || overflow) {
+					readDownloadState();
+				}
+				synchronized (this) {
+					RepositoryListing next = overflow ? scan() : update(changed);
+					publish(indexChanged || downloadStateChanged ? next.map(this::describe) : next);
+				}
+			}
+			catch (IOException e) {
+				logger.error(String.format("Failed to update the listing of %s", directory), e);
+			}
+			if (indexChanged || overflow) {
+				appImportCache.invalidate();
+			}
+		}
+	}
+
+	private RepositoryListing update(Set<String> filenames) throws IOException {
+		List<RepositoryListing.Artifact> updated = new ArrayList<>();
+		List<String> removed = new ArrayList<>();
+		for (String filename : filenames) {
+			RepositoryListing.Artifact artifact = read(directory.resolve(filename));
+			if (artifact != null) {
+				updated.add(describe(artifact));
+			}
+			else {
+				removed.add(filename);
+			}
+		}
+		return listing.with(updated, removed);
+	}
+
+	private RepositoryListing scan() throws IOException {
+		List<RepositoryListing.Artifact> artifacts = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				if (isArtifact(file.getFileName().toString())) {
+					RepositoryListing.Artifact artifact = read(file);
+					if (artifact != null) {
+						artifacts.add(describe(artifact));
+					}
+				}
+			}
+		}
+		return listing.replacedBy(artifacts);
+	}
+
+	/**
+	 * @return the artifact, or null if the file no longer exists
+	 */
+	private RepositoryListing.Artifact read(Path file) throws IOException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return attributes.isRegularFile() ? new RepositoryListing.Artifact(file.getFileName().toString(),
+				attributes.size(), attributes.lastModifiedTime().toMillis()) : null;
+		}
+		catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private RepositoryListing scanClasspath() throws IOException {
+		List<RepositoryListing.Artifact> artifacts = new ArrayList<>();
+		Resource[] jars;
+		try {
+			jars = new PathMatchingResourcePatternResolver(getClass().getClassLoader())
+				.getResources("classpath:static/*.jar");
+		}
+		catch (FileNotFoundException e) {
+			// nothing packaged
+			jars = new Resource[0];
+		}
+		for (Resource jar : jars) {
+			artifacts.add(describe(new RepositoryListing.Artifact(jar.getFilename(), jar.contentLength(),
+				jar.lastModified())));
+		}
+		return listing.replacedBy(artifacts);
+	}
+
+	private synchronized void publish(RepositoryListing next) {
+		listing = next;
+		if (next.getArtifacts().values().stream().anyMatch(artifact -> artifact.getSha1() == null)
+			&& checksumsQueued.compareAndSet(false, true)) {
+			checksummer.execute(this::computeChecksums);
+		}
+	}
+
+	/**
+	 * @return the artifact with the app type and name it is indexed under and its checksum, as far as they are known
+	 */
+	private RepositoryListing.Artifact describe(RepositoryListing.Artifact artifact) {
+		String sha1 = null;
+		RepositoryListing.Artifact computed = computedChecksums.get(artifact.getFilename());
+		RepositoryListing.Artifact recorded = recordedChecksums.get(artifact.getFilename());
+		if (artifact.sameContent(computed)) {
+			sha1 = computed.getSha1();
+		}
+		else if (recorded != null && recorded.getSize() == artifact.getSize()) {
+			sha1 = recorded.getSha1();
+		}
+		return new RepositoryListing.Artifact(artifact.getFilename(), artifact.getSize(), artifact.getLastModified(),
+			sha1, keys.get(artifact.getFilename()));
+	}
+
+	/**
+	 * Compute the checksums missing from the listing, publishing them a batch at a time. An artifact that changes
+	 * meanwhile is hashed again on the next run.
+	 */
+	private void computeChecksums() {
+		checksumsQueued.set(false);
+		List<RepositoryListing.Artifact> missing = new ArrayList<>();
+		listing.getArtifacts().values().stream().filter(artifact -> artifact.getSha1() == null).forEach(missing::add);
+		int computed = 0;
+		for (RepositoryListing.Artifact artifact : missing) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			try {
+				computedChecksums.put(artifact.getFilename(), new RepositoryListing.Artifact(artifact.getFilename(),
+					artifact.getSize(), artifact.getLastModified(), sha1(artifact), null));
+			}
+			catch (IOException e) {
+				// removed or replaced meanwhile, the watcher will catch up
+				continue;
+			}
+			if (++computed % CHECKSUM_BATCH_SIZE == 0) {
+				applyChecksums();
+			}
+		}
+		if (computed % CHECKSUM_BATCH_SIZE != 0) {
+			applyChecksums();
+		}
+	}
+
+	private synchronized void applyChecksums() {
+		UnaryOperator<RepositoryListing.Artifact> withChecksum = artifact -> {
+			RepositoryListing.Artifact computed = computedChecksums.get(artifact.getFilename());
+			return artifact.getSha1() == null && artifact.sameContent(computed) ?
+				new RepositoryListing.Artifact(artifact.getFilename(), artifact.getSize(), artifact.getLastModified(),
+					computed.getSha1(), keys.get(artifact.getFilename())) : artifact;
+		};
+		// not published, so artifacts that could not be hashed are not queued again until the listing changes
+		listing = listing.map(withChecksum);
+	}
+
+	private String sha1(RepositoryListing.Artifact artifact) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = resource(artifact.getFilename()).getInputStream()) {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return String.format("%040x", new BigInteger(1, digest.digest()));
+	}
+
+	/**
+	 * Read the file name to key entries of the repository index.
+	 */
+	private void readIndex() {
+		Map<String, String> keys = new HashMap<>();
+		// the first key in order wins for a file indexed under more than one
+		new TreeMap<>(loadProperties(APP_INFO)).forEach((key, filename) -> keys.putIfAbsent((String) filename,
+			(String) key));
+		this.keys = keys;
+	}
+
+	/**
+	 * Read the checksums the app tool recorded for its downloads, with the size they were recorded for.
+	 */
+	private void readDownloadState() {
+		Properties state = loadProperties(DOWNLOAD_STATE);
+		Map<String, RepositoryListing.Artifact> checksums = new HashMap<>();
+		for (String key : state.stringPropertyNames()) {
+			if (key.endsWith(".sha1")) {
+				String filename = key.substring(0, key.length() - ".sha1".length());
+				try {
+					long size = Long.parseLong(state.getProperty(filename + ".content-length", "-1"));
+					checksums.put(filename, new RepositoryListing.Artifact(filename, size, -1L, state.getProperty(key),
+						null));
+				}
+				catch (NumberFormatException e) {
+					// not recorded for a known size
+				}
+			}
+		}
+		recordedChecksums = checksums;
+	}
+
+	private Properties loadProperties(String filename) {
+		Properties properties = new Properties();
+		Resource resource = resource(filename);
+		if (resource.exists()) {
+			try (InputStream in = resource.getInputStream()) {
+				properties.load(in);
+			}
+			catch (IOException | IllegalArgumentException e) {
+				logger.warn(String.format("Failed to read %s: %s", resource.getDescription(), e.getMessage()));
+			}
+		}
+		return properties;
+	}
+
+	private Resource resource(String filename) {
+		return directory != null ? new FileSystemResource(directory.resolve(filename)) :
+			new ClassPathResource("static/" + filename);
+	}
+
+	/**
+	 * @return true for jars, but not unfinished downloads or hidden files
+	 */
+	private static boolean isArtifact(String filename) {
+		return filename.endsWith(".jar") && !filename.startsWith(".");
+	}
+}
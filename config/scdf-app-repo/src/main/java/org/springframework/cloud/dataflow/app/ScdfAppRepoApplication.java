@@ -16,8 +16,18 @@
 
 package org.springframework.cloud.dataflow.app;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @SpringBootApplication
 public class ScdfAppRepoApplication {
@@ -26,4 +36,39 @@ public class ScdfAppRepoApplication {
 		SpringApplication.run(ScdfAppRepoApplication.class, args);
 	}
 
+	@Bean
+	AppImportCache appImportCache(@Value("${local.repo.directory:}") String localRepoDirectory) {
+		Path directory = repositoryDirectory(localRepoDirectory);
+		return new AppImportCache(directory != null ?
+			new FileSystemResource(directory.resolve("app-info.properties")) :
+			new ClassPathResource("/static/app-info.properties"));
+	}
+
+	@Bean(initMethod = "start", destroyMethod = "stop")
+	RepositoryWatcher repositoryWatcher(@Value("${local.repo.directory:}") String localRepoDirectory,
+		AppImportCache appImportCache) {
+		return new RepositoryWatcher(repositoryDirectory(localRepoDirectory), appImportCache);
+	}
+
+	@Bean
+	FilterRegistrationBean<RepositoryFileFilter> repositoryFileFilter(
+		@Value("${local.repo.directory:}") String localRepoDirectory) {
+		Path directory = repositoryDirectory(localRepoDirectory);
+		FilterRegistrationBean<RepositoryFileFilter> registration = new FilterRegistrationBean<>(
+			new RepositoryFileFilter(directory != null ? directory : Paths.get(".")));
+		registration.setEnabled(directory != null);
+		return registration;
+	}
+
+	/**
+	 * @return the repository directory to serve from disk, or null to serve only the jars packaged into
+	 * 'classpath:static/'
+	 */
+	static Path repositoryDirectory(String localRepoDirectory) {
+		if (!StringUtils.hasText(localRepoDirectory)) {
+			return null;
+		}
+		Path directory = Paths.get(localRepoDirectory).toAbsolutePath().normalize();
+		return Files.isDirectory(directory) ? directory : null;
+	}
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class AppImportCacheTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path appInfo;
+
+	private AppImportCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		appInfo = temporaryFolder.getRoot().toPath().resolve("app-info.properties");
+		Files.write(appInfo, String.join("\n", "source.time=time-source-kafka-2.1.0.RELEASE.jar",
+			"sink.log=log-sink-kafka-2.1.0.RELEASE.jar").getBytes(UTF_8));
+		cache = new AppImportCache(new FileSystemResource(appInfo));
+	}
+
+	@Test
+	public void importIsRenderedWithAStrongEtag() throws IOException {
+		AppImportCache.AppImport appImport = cache.get("http://repo:8080");
+
+		assertThat(new String(appImport.getContent(), UTF_8)).isEqualTo(
+			"sink.log=http://repo:8080/log-sink-kafka-2.1.0.RELEASE.jar\n"
+				+ "source.time=http://repo:8080/time-source-kafka-2.1.0.RELEASE.jar\n");
+		assertThat(appImport.getEtag()).isEqualTo("\"" + DigestUtils.md5DigestAsHex(appImport.getContent()) + "\"");
+		assertThat(cache.get("http://repo:8080")).isSameAs(appImport);
+		assertThat(cache.get("http://other:8080").getEtag()).isNotEqualTo(appImport.getEtag());
+	}
+
+	@Test
+	public void changedIndexIsRenderedAgain() throws IOException {
+		AppImportCache.AppImport before = cache.get("http://repo:8080");
+		Files.write(appInfo, "sink.log=log-sink-kafka-2.1.1.RELEASE.jar".getBytes(UTF_8));
+
+		AppImportCache.AppImport after = cache.get("http://repo:8080");
+
+		assertThat(new String(after.getContent(), UTF_8))
+			.isEqualTo("sink.log=http://repo:8080/log-sink-kafka-2.1.1.RELEASE.jar\n");
+		assertThat(after.getEtag()).isNotEqualTo(before.getEtag());
+	}
+
+	@Test
+	public void invalidateDropsRenderings() throws IOException {
+		AppImportCache.AppImport before = cache.get("http://repo:8080");
+
+		cache.invalidate();
+
+		AppImportCache.AppImport after = cache.get("http://repo:8080");
+		assertThat(after).isNotSameAs(before);
+		assertThat(after.getEtag()).isEqualTo(before.getEtag());
+	}
+
+	@Test
+	public void leastRecentlyUsedBaseUrlIsEvicted() throws IOException {
+		AppImportCache.AppImport first = cache.get("http://host0");
+		AppImportCache.AppImport second = cache.get("http://host1");
+		for (int i = 2; i <= 16; i++) {
+			cache.get("http://host" + i);
+			// keep the second one recently used
+			cache.get("http://host1");
+		}
+
+		assertThat(cache.get("http://host1")).isSameAs(second);
+		assertThat(cache.get("http://host0")).isNotSameAs(first);
+	}
+
+	@Test
+	public void missingIndexHasNoImport() throws IOException {
+		Files.delete(appInfo);
+
+		assertThat(cache.get("http://repo:8080")).isNull();
+	}
+
+	@Test
+	public void unchangedImportIsNotSentAgain() throws IOException {
+		AppImportController controller = new AppImportController();
+		ReflectionTestUtils.setField(controller, "appImportCache", cache);
+
+		MockHttpServletResponse response = get(controller, null);
+		String etag = response.getHeader("ETag");
+
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(etag).isEqualTo(cache.get("http://localhost").getEtag());
+		assertThat(response.getContentAsString())
+			.contains("sink.log=http://localhost/log-sink-kafka-2.1.0.RELEASE.jar");
+		assertThat(response.getHeader("Cache-Control")).isEqualTo("no-cache");
+
+		response = get(controller, etag);
+
+		assertThat(response.getStatus()).isEqualTo(304);
+		assertThat(response.getContentAsByteArray()).isEmpty();
+
+		Files.write(appInfo, "sink.log=log-sink-kafka-2.1.1.RELEASE.jar".getBytes(UTF_8));
+
+		assertThat(get(controller, etag).getStatus()).isEqualTo(200);
+	}
+
+	private MockHttpServletResponse get(AppImportController controller, String ifNoneMatch) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/import");
+		if (ifNoneMatch != null) {
+			request.addHeader("If-None-Match", ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.downloadAppImport(request, response);
+		return response;
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DirectoryListingControllerTests {
+
+	private RepositoryWatcher repositoryWatcher = mock(RepositoryWatcher.class);
+
+	private DirectoryListingController controller = new DirectoryListingController();
+
+	private RepositoryListing listing = RepositoryListing.EMPTY.replacedBy(Arrays.asList(
+		artifact("log-sink-kafka-2.1.0.RELEASE.jar", "sink.log"),
+		artifact("log-sink-rabbit-2.1.0.RELEASE.jar", "sink.log-rabbit"),
+		artifact("time-source-kafka-2.1.0.RELEASE.jar", "source.time"),
+		artifact("timestamp-task-2.1.0.RELEASE.jar", "task.timestamp"),
+		artifact("my-app-1.0.0.jar", null)));
+
+	private MockHttpServletResponse response;
+
+	@Before
+	public void setUp() {
+		ReflectionTestUtils.setField(controller, "repositoryWatcher", repositoryWatcher);
+		when(repositoryWatcher.getListing()).thenReturn(listing);
+	}
+
+	@Test
+	public void typeAndNameMayContainWildcards() {
+		assertThat(get("s*", "", 0, 50, null).getArtifacts()).extracting(RepositoryListing.Artifact::getFilename)
+			.containsExactly("log-sink-kafka-2.1.0.RELEASE.jar", "log-sink-rabbit-2.1.0.RELEASE.jar",
+				"time-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(get("sink", "log*", 0, 50, null).getArtifacts()).hasSize(2);
+		assertThat(get("*", "time*", 0, 50, null).getArtifacts()).extracting(RepositoryListing.Artifact::getName)
+			.containsExactly("time", "timestamp");
+		assertThat(get("", "", 0, 50, null).getTotalElements()).isEqualTo(5);
+		assertThat(get("*", "", 0, 50, null).getTotalElements()).isEqualTo(4);
+	}
+
+	@Test
+	public void pageAndSizeAreBroughtIntoRange() {
+		RepositoryListing.Page page = get("", "", -1, 0, null);
+
+		assertThat(page.getNumber()).isEqualTo(0);
+		assertThat(page.getSize()).isEqualTo(1);
+		assertThat(page.getTotalPages()).isEqualTo(5);
+		assertThat(page.getArtifacts()).extracting(RepositoryListing.Artifact::getFilename)
+			.containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void etagDependsOnTheQuery() {
+		get("sink", "", 0, 50, null);
+		String etag = response.getHeader("ETag");
+
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(get("sink", "", 0, 50, etag)).isNull();
+		assertThat(response.getStatus()).isEqualTo(304);
+		// the same query once normalized
+		assertThat(get(" sink ", "", -1, 50, etag)).isNull();
+		assertThat(response.getStatus()).isEqualTo(304);
+
+		assertThat(get("source", "", 0, 50, etag)).isNotNull();
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(response.getHeader("ETag")).isNotEqualTo(etag);
+		assertThat(get("sink", "", 1, 50, etag)).isNotNull();
+		assertThat(get("sink", "", 0, 10, etag)).isNotNull();
+	}
+
+	@Test
+	public void etagChangesWithTheListing() {
+		get("", "", 0, 50, null);
+		String etag = response.getHeader("ETag");
+		when(repositoryWatcher.getListing()).thenReturn(listing.with(Collections.emptyList(),
+			Collections.singletonList("my-app-1.0.0.jar")));
+
+		RepositoryListing.Page page = get("", "", 0, 50, etag);
+
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(page.getTotalElements()).isEqualTo(4);
+	}
+
+	private RepositoryListing.Page get(String type, String name, int page, int size, String ifNoneMatch) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/repo");
+		if (ifNoneMatch != null) {
+			request.addHeader("If-None-Match", ifNoneMatch);
+		}
+		response = new MockHttpServletResponse();
+		return controller.listJson(type, name, page, size, new ServletWebRequest(request, response), response);
+	}
+
+	private static RepositoryListing.Artifact artifact(String filename, String key) {
+		return new RepositoryListing.Artifact(filename, 3L, 0L, null, key);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class RepositoryFileFilterTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private RepositoryFileFilter filter;
+
+	@Before
+	public void setUp() throws IOException {
+		Path directory = temporaryFolder.getRoot().toPath();
+		Files.write(directory.resolve("log-sink-kafka-2.1.0.RELEASE.jar"), "jar".getBytes(UTF_8));
+		Files.write(directory.resolve("app-info.properties"), "sink.log=log-sink-kafka-2.1.0.RELEASE.jar"
+			.getBytes(UTF_8));
+		Files.write(directory.resolve("app-info.journal"), "+sink.log=log-sink-kafka-2.1.0.RELEASE.jar"
+			.getBytes(UTF_8));
+		Files.write(directory.resolve("download-state.properties"), "".getBytes(UTF_8));
+		Files.write(directory.resolve("app-info123.tmp"), "".getBytes(UTF_8));
+		Files.write(directory.resolve("time-source-kafka-2.1.0.RELEASE.jar.part"), "ja".getBytes(UTF_8));
+		filter = new RepositoryFileFilter(directory);
+	}
+
+	@Test
+	public void jarsAndIndexAreServed() throws ServletException, IOException {
+		assertThat(get("/log-sink-kafka-2.1.0.RELEASE.jar").getContentAsString()).isEqualTo("jar");
+		assertThat(get("/app-info.properties").getContentAsString())
+			.isEqualTo("sink.log=log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void journalIsNotServed() throws ServletException, IOException {
+		assertNotServed("/app-info.journal");
+	}
+
+	@Test
+	public void toolFilesAreNotServed() throws ServletException, IOException {
+		assertNotServed("/download-state.properties");
+		assertNotServed("/app-info123.tmp");
+		assertNotServed("/time-source-kafka-2.1.0.RELEASE.jar.part");
+		assertNotServed("/.locks/app-info.properties.lock");
+		assertNotServed("/..%2Fapp-info.journal");
+	}
+
+	private void assertNotServed(String path) throws ServletException, IOException {
+		MockFilterChain chain = new MockFilterChain();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(new MockHttpServletRequest("GET", path), response, chain);
+		assertThat(chain.getRequest()).as(path).isNotNull();
+		assertThat(response.getContentAsByteArray()).as(path).isEmpty();
+	}
+
+	private MockHttpServletResponse get(String path) throws ServletException, IOException {
+		MockFilterChain chain = new MockFilterChain();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(new MockHttpServletRequest("GET", path), response, chain);
+		assertThat(chain.getRequest()).isNull();
+		return response;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.app;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+public class RepositoryWatcherTests {
+
+	private static final long TIMEOUT_MILLIS = 30000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path directory;
+
+	private AppImportCache appImportCache;
+
+	private RepositoryWatcher watcher;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = temporaryFolder.getRoot().toPath();
+		Files.write(directory.resolve("log-sink-kafka-2.1.0.RELEASE.jar"), "jar".getBytes(UTF_8));
+		Files.write(directory.resolve("app-info.properties"), "sink.log=log-sink-kafka-2.1.0.RELEASE.jar"
+			.getBytes(UTF_8));
+		appImportCache = new AppImportCache(new FileSystemResource(directory.resolve("app-info.properties")));
+		watcher = new RepositoryWatcher(directory, appImportCache);
+		watcher.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		watcher.stop();
+	}
+
+	@Test
+	public void directoryIsScannedAndChecksummedAtStart() throws InterruptedException {
+		RepositoryListing listing = awaitListing(l -> l.getArtifacts().values().stream()
+			.allMatch(artifact -> artifact.getSha1() != null));
+
+		RepositoryListing.Artifact artifact = listing.getArtifacts().get("log-sink-kafka-2.1.0.RELEASE.jar");
+		assertThat(listing.getFilenames()).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+		assertThat(artifact.getSize()).isEqualTo(3L);
+		assertThat(artifact.getSha1()).isEqualTo("f92e777f4341930bad9b2422283c4680d00dbc06");
+		assertThat(artifact.getType()).isEqualTo("sink");
+		assertThat(artifact.getName()).isEqualTo("log");
+	}
+
+	@Test
+	public void createdAndDeletedJarsUpdateTheListing() throws IOException, InterruptedException {
+		Files.write(directory.resolve("time-source-kafka-2.1.0.RELEASE.jar"), "jar936".getBytes(UTF_8));
+		Files.write(directory.resolve("time-source-kafka-2.1.0.RELEASE.jar.part"), "ja".getBytes(UTF_8));
+
+		RepositoryListing listing = awaitListing(l -> {
+			RepositoryListing.Artifact artifact = l.getArtifacts().get("time-source-kafka-2.1.0.RELEASE.jar");
+			return artifact != null && artifact.getSha1() != null;
+		});
+
+		assertThat(listing.getFilenames()).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar",
+			"time-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(listing.getArtifacts().get("time-source-kafka-2.1.0.RELEASE.jar").getSha1())
+			.isEqualTo("00ab0dd04dc2b2078dd817ab45e08fbdac20f7ea");
+
+		Files.delete(directory.resolve("log-sink-kafka-2.1.0.RELEASE.jar"));
+
+		listing = awaitListing(l -> !l.getArtifacts().containsKey("log-sink-kafka-2.1.0.RELEASE.jar"));
+		assertThat(listing.getFilenames()).containsExactly("time-source-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void changedIndexUpdatesKeysAndImport() throws IOException, InterruptedException {
+		Files.write(directory.resolve("time-source-kafka-2.1.0.RELEASE.jar"), "jar".getBytes(UTF_8));
+		awaitListing(l -> l.getArtifacts().containsKey("time-source-kafka-2.1.0.RELEASE.jar"));
+		AppImportCache.AppImport before = appImportCache.get("http://repo");
+
+		Files.write(directory.resolve("app-info.properties"), String.join("\n",
+			"sink.log=log-sink-kafka-2.1.0.RELEASE.jar", "source.time=time-source-kafka-2.1.0.RELEASE.jar")
+			.getBytes(UTF_8));
+
+		RepositoryListing listing = awaitListing(l -> "source".equals(
+			l.getArtifacts().get("time-source-kafka-2.1.0.RELEASE.jar").getType()));
+		assertThat(listing.getArtifacts().get("time-source-kafka-2.1.0.RELEASE.jar").getName()).isEqualTo("time");
+		assertThat(new String(appImportCache.get("http://repo").getContent(), UTF_8))
+			.contains("source.time=http://repo/time-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(appImportCache.get("http://repo").getEtag()).isNotEqualTo(before.getEtag());
+	}
+
+	private RepositoryListing awaitListing(Predicate<RepositoryListing> condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		RepositoryListing listing = watcher.getListing();
+		while (!condition.test(listing)) {
+			assertThat(System.currentTimeMillis()).as("listing %s", listing.getFilenames()).isLessThan(deadline);
+			Thread.sleep(20L);
+			listing = watcher.getListing();
+		}
+		return listing;
+	}
+}
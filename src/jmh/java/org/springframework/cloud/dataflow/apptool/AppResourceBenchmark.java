@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures building {@link AppResource}s from synthetic catalogs of the given size. Each invocation handles one entry,
+ * cycling through the catalog, so the score is entries per second and, with '-prof gc', 'gc.alloc.rate.norm' is the
+ * allocation per entry.
+ * <p>
+ * 'regexBaseline' repeats the parsing and URL construction done before the hand-written parser, for comparison.
+ * 'catalog' builds the whole catalog per invocation, as a cold shell command does, sharing repeated strings across
+ * its entries as a catalog load does.
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppResourceBenchmark {
+
+	private static final String[] TYPES = { "source", "processor", "sink" };
+
+	private static final String[] BINDERS = { "kafka", "rabbit" };
+
+	private static final String MAVEN_REPO_URL = "https://repo.spring.io/release";
+
+	@Param({ "10000", "100000" })
+	private int entries;
+
+	private String[] keys;
+
+	private String[] values;
+
+	private int next;
+
+	@Setup
+	public void generateCatalog() {
+		keys = new String[entries];
+		values = new String[entries];
+		for (int i = 0; i < entries; i += 2) {
+			String type = TYPES[i % TYPES.length];
+			String name = "app" + (i / 2);
+			String artifactId = String.format("%s-%s-%s", name, type, BINDERS[i % BINDERS.length]);
+			String version = String.format("2.%d.%d.RELEASE", (i / 7) % 4, (i / 3) % 3);
+			keys[i] = type + "." + name;
+			values[i] = String.format("maven://org.springframework.cloud.stream.app:%s:%s", artifactId, version);
+			if (i + 1 < entries) {
+				keys[i + 1] = keys[i] + ".metadata";
+				values[i + 1] = String.format("maven://org.springframework.cloud.stream.app:%s:jar:metadata:%s",
+					artifactId, version);
+			}
+		}
+	}
+
+	@Benchmark
+	public AppResource construct() {
+		int i = nextEntry();
+		return new AppResource(keys[i], values[i], MAVEN_REPO_URL);
+	}
+
+	@Benchmark
+	public void constructAndResolveUrl(Blackhole blackhole) {
+		int i = nextEntry();
+		blackhole.consume(new AppResource(keys[i], values[i], MAVEN_REPO_URL).getUrl());
+	}
+
+	@Benchmark
+	public void regexBaseline(Blackhole blackhole) throws MalformedURLException {
+		int i = nextEntry();
+		String[] tokens = keys[i].split("\\.");
+		blackhole.consume(tokens);
+		String coordinates = values[i].replaceFirst("maven://", "");
+		Pattern p = Pattern.compile("([^: ]+):([^: ]+)(:([^: ]*)(:([^: ]+))?)?:([^: ]+)");
+		Matcher m = p.matcher(coordinates);
+		m.matches();
+		String groupId = m.group(1);
+		String artifactId = m.group(2);
+		String extension = m.group(4) != null && !m.group(4).isEmpty() ? m.group(4) : "jar";
+		String classifier = m.group(6) != null ? m.group(6) : "";
+		String version = m.group(7);
+		String url = classifier.isEmpty() ?
+			String.format("%s/%s-%s.%s", String.join("/", MAVEN_REPO_URL, groupId.replaceAll("\\.", "/"),
+				artifactId, version), artifactId, version, extension) :
+			String.format("%s/%s-%s-%s.%s", String.join("/", MAVEN_REPO_URL, groupId.replaceAll("\\.", "/"),
+				artifactId, version), artifactId, version, classifier, extension);
+		URL resolved = new URL(url);
+		String[] path = resolved.getPath().split("/");
+		blackhole.consume(path[path.length - 1]);
+	}
+
+	@Benchmark
+	public Catalog catalog() {
+		List<AppResource> appResources = new ArrayList<>(entries);
+		Map<String, String> interned = new HashMap<>();
+		for (int i = 0; i < entries; i++) {
+			appResources.add(new AppResource(keys[i], values[i], MAVEN_REPO_URL, null, interned));
+		}
+		return new Catalog(appResources);
+	}
+
+	private int nextEntry() {
+		int i = next;
+		next = i + 1 == entries ? 0 : i + 1;
+		return i;
+	}
+}
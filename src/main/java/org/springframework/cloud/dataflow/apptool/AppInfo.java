@@ -16,139 +16,581 @@
 
 package org.springframework.cloud.dataflow.apptool;
 
-import static org.springframework.cloud.dataflow.apptool.Utils.fatal;
-import static org.springframework.cloud.dataflow.apptool.Utils.loadPropertiesFile;
 import static org.springframework.cloud.dataflow.apptool.Utils.message;
 
-import org.springframework.util.PatternMatchUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
 
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * This persists the current app repository state, including the name and app type for each artifact. It is used to
  * search the repository, list contents, and generate the import file from the app repo server.
- *
- * @author David Turanski
+ * <p>
+ * The state is held in memory and queries are answered from memory. Each change is appended to 'app-info.journal' as it
+ * is made, an add as '+key=filename', a replacement as '=key=filename' and a remove as '-filename', so it survives the
+ * process being killed. The journal is replayed over the 'app-info.properties' snapshot; a torn last record without its
+ * line terminator is ignored and overwritten by the next append. The journal is compacted into the snapshot, written in
+ * the sorted 'key=filename' format read by the app repo server to a temporary file and renamed into place, by
+ * {@link #flush()} at the end of a command, or in the background once {@link #setFlushPolicy(int, long) a number of
+ * changes} has accumulated or the oldest uncompacted change is older than the flush interval. Replaying records that
+ * are already in the snapshot has no effect, so a crash between the rename and the truncation of the journal is
+ * harmless.
+ * <p>
+ * Bulk operations should be wrapped in {@link #begin()} and {@link #commit()}, or use {@link #addAll(Collection)}
+ * and {@link #removeAll(Collection)}, so they cause a single snapshot write and a single fsync however many entries
+ * they touch.
+ * <p>
+ * Several processes may share the repository directory. Every operation holds the 'app-info' {@link FileLocks file
+ * lock} and first checks the version stamp in the first line of the snapshot ('#version=n', a comment to readers of
+ * the properties) and the length of the journal against what this process has already read. If another process has
+ * compacted the journal, the snapshot is reloaded; if it has only appended, just the new records are replayed. The
+ * operation is then applied to the current state, so concurrent writers never lose each other's entries.
+ * <p>
+ * Entries are indexed by type and name and by file name, so lookups with name and type patterns and removal by file
+ * name do not scan every entry.
+ * <p>
+ * An operation that cannot read or write the files, or cannot get the lock, throws an {@link UncheckedIOException}
+ * and leaves it to the caller to report the error, so the process is never exited while the monitor is held.
  **/
 public class AppInfo {
 
-	private final File appInfoFile;
+	private static final char ADD = '+';
 
-	public void clean() {
+	private static final char REMOVE = '-';
 
-		try {
-			if (Files.exists(appInfoFile.toPath())) {
-				Files.delete(appInfoFile.toPath());
-			}
+	private static final char REPLACE = '=';
+
+	private static final String VERSION = "#version=";
+
+	private final Path appInfoFile;
+
+	private final Path journalFile;
+
+	private final Path lockFile;
+
+	private final ScheduledExecutorService flushScheduler;
+
+	private Map<String, String> appInfo;
+
+	private NavigableMap<String, NavigableMap<String, Set<String>>> keysByTypeAndName;
+
+	private Map<String, Set<String>> keysByFilename;
+
+	private long version;
+
+	private long journalPosition;
+
+	private int pendingChanges;
+
+	private int batchDepth;
+
+	private ScheduledFuture<?> scheduledFlush;
+
+	private int maxPendingChanges = 100;
+
+	private long flushIntervalMillis = 5000L;
+
+	private long lockTimeoutMillis = FileLocks.TIMEOUT_MILLIS;
+
+	public AppInfo(String localRepoDirectory) {
+		this.appInfoFile = Paths.get(localRepoDirectory, "app-info.properties");
+		this.journalFile = Paths.get(localRepoDirectory, "app-info.journal");
+		this.lockFile = FileLocks.lockFile(localRepoDirectory, "app-info");
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("app-info-flush-");
+		threadFactory.setDaemon(true);
+		this.flushScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+	}
+
+	/**
+	 * @param maxPendingChanges   the number of journal records that triggers a compaction
+	 * @param flushIntervalMillis the maximum age of an uncompacted journal record, or 0 to only compact on demand
+	 */
+	public void setFlushPolicy(int maxPendingChanges, long flushIntervalMillis) {
+		this.maxPendingChanges = maxPendingChanges;
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * @param lockTimeoutMillis how long an operation waits for the lock held by another process before it fails
+	 */
+	public void setLockTimeout(long lockTimeoutMillis) {
+		this.lockTimeoutMillis = lockTimeoutMillis;
+	}
+
+	/**
+	 * Remove all entries, leaving an empty snapshot with a new version so other processes drop their state too.
+	 */
+	public synchronized void clean() {
+		locked(() -> {
+			clear();
+			compact();
+			return null;
+		});
+	}
+
+	/**
+	 * Start a batch. Until the matching {@link #commit()}, changes are only journaled and the snapshot is neither
+	 * compacted in the background nor rewritten. Batches may be nested; only the outermost commit compacts.
+	 */
+	public synchronized void begin() {
+		batchDepth++;
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
 		}
-		catch (IOException e) {
-			message("Error:" + e.getMessage());
+	}
+
+	/**
+	 * End a batch started with {@link #begin()}, compacting all of its changes into the snapshot with a single write
+	 * once the outermost batch ends.
+	 */
+	public synchronized void commit() {
+		Assert.state(batchDepth > 0, "commit() without begin()");
+		if (--batchDepth == 0) {
+			flush();
 		}
 	}
 
-	public AppInfo(String localRepoDirectory) {
-		this.appInfoFile = Paths.get(localRepoDirectory, "app-info.properties").toFile();
+	public synchronized void add(AppResource appResource) {
+		locked(() -> append(addRecords(Collections.singletonList(appResource))));
+		changed(false);
 	}
 
-	public void add(AppResource appResource) {
-		try {
-			if (!this.appInfoFile.exists()) {
-				appInfoFile.createNewFile();
+	/**
+	 * Add the entries, journaled with a single write. Outside a batch, they are compacted into the snapshot at once.
+	 */
+	public synchronized void addAll(Collection<? extends AppResource> appResources) {
+		locked(() -> append(addRecords(appResources)));
+		changed(true);
+	}
+
+	/**
+	 * Add the entries, pointing keys that are already present at the new file names, e.g. after a version change,
+	 * journaled with a single write. Outside a batch, they are compacted into the snapshot at once.
+	 * @return the file names that were replaced and are no longer referenced by any entry
+	 */
+	public synchronized Set<String> replaceAll(Collection<? extends AppResource> appResources) {
+		Set<String> superseded = new HashSet<>();
+		locked(() -> append(replaceRecords(appResources, superseded)));
+		changed(true);
+		return superseded;
+	}
+
+	public synchronized void remove(String path) {
+		locked(() -> append(removeRecords(Collections.singletonList(path))));
+		changed(false);
+	}
+
+	/**
+	 * Remove the entries for the file names, journaled with a single write. Outside a batch, they are compacted into
+	 * the snapshot at once.
+	 */
+	public synchronized void removeAll(Collection<String> paths) {
+		locked(() -> append(removeRecords(paths)));
+		changed(true);
+	}
+
+	public synchronized List<String> findAll() {
+		return locked(() -> appInfo.entrySet()
+			.stream()
+			.map(e -> String.format("%s=%s", e.getKey(), e.getValue()))
+			.sorted()
+			.collect(Collectors.toList()));
+	}
+
+	public synchronized Map<String, String> findAllAsMap() {
+		return locked(() -> new HashMap<>(appInfo));
+	}
+
+	/**
+	 * Look up the file names of entries by name and type, either of which may contain '*' wildcards. The patterns are
+	 * compiled once per query and only matched against the index entries sharing their literal prefix.
+	 */
+	public synchronized List<String> findByNameAndType(String name, String type) {
+		Glob nameGlob = Glob.compile(name);
+		Glob typeGlob = Glob.compile(type);
+		return locked(() -> {
+			List<String> result = new ArrayList<>();
+			for (NavigableMap<String, Set<String>> keysByName : typeGlob.select(keysByTypeAndName)) {
+				for (Set<String> keys : nameGlob.select(keysByName)) {
+					keys.forEach(key -> result.add(appInfo.get(key)));
+				}
 			}
+			return result;
+		});
+	}
 
-			Map<String, String> appInfo = loadPropertiesFile(appInfoFile);
+	public boolean matches(String type, String name, String key) {
+		String[] typeAndName = typeAndName(key);
+		return Glob.compile(type).matches(typeAndName[0]) && Glob.compile(name).matches(typeAndName[1]);
+	}
 
-			appInfo.putIfAbsent(appResource.getKey(), appResource.getFilename());
+	/**
+	 * Compact the journal, if it has any records, into the snapshot.
+	 */
+	public synchronized void flush() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		locked(() -> {
+			if (pendingChanges > 0) {
+				compact();
+			}
+			return null;
+		});
+	}
 
-			update(appInfo);
+	/**
+	 * Compact the journal and stop the background compaction. Uncompacted changes that cannot be written are left in
+	 * the journal, to be replayed by the next process.
+	 */
+	public void close() {
+		try {
+			flush();
+		}
+		catch (UncheckedIOException e) {
+			message(String.format("Failed to compact %s: %s", journalFile, e.getMessage()));
+		}
+		finally {
+			flushScheduler.shutdown();
+		}
+	}
 
+	/**
+	 * Run the action holding the lock, once the in-memory state has caught up with changes made by other processes.
+	 * @throws UncheckedIOException if the lock cannot be taken or the files cannot be read or written
+	 */
+	private <T> T locked(FileLocks.LockedAction<T> action) {
+		try {
+			return FileLocks.withLock(lockFile, lockTimeoutMillis, () -> {
+				refresh();
+				return action.run();
+			});
 		}
-		catch (Exception e) {
-			fatal(e.getMessage());
+		catch (IOException e) {
+			// the in-memory state may be ahead of the files now, so it is reloaded by the next operation
+			appInfo = null;
+			throw new UncheckedIOException(e.getMessage(), e);
 		}
 	}
 
-	public void remove(String path) {
+	private void refresh() throws IOException {
+		long snapshotVersion = snapshotVersion();
+		long journalLength = Files.exists(journalFile) ? Files.size(journalFile) : 0L;
+		if (appInfo == null || snapshotVersion != version || journalLength < journalPosition) {
+			clear();
+			loadSnapshot().forEach(this::put);
+			version = snapshotVersion;
+			journalPosition = 0L;
+			pendingChanges = 0;
+		}
+		if (journalLength > journalPosition) {
+			replayJournal(journalLength);
+		}
+	}
 
+	/**
+	 * Write the snapshot with the next version and truncate the journal. Versions are seeded from the clock so a
+	 * snapshot recreated after the repository is cleaned does not reuse a version another process has seen.
+	 */
+	private void compact() throws IOException {
+		long nextVersion = Math.max(version + 1, System.currentTimeMillis());
+		StringBuilder snapshot = new StringBuilder(VERSION).append(nextVersion).append(System.lineSeparator());
+		appInfo.forEach((k, v) -> snapshot.append(String.format("%s=%s%n", k, v)));
+		Path temp = Files.createTempFile(appInfoFile.getParent(), "app-info", ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.wrap(snapshot.toString().getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
 		try {
-			Map<String, String> appInfo = loadPropertiesFile(appInfoFile);
-			appInfo.entrySet().removeIf(e -> e.getValue().equals(path));
-			update(appInfo);
+			Files.move(temp, appInfoFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, appInfoFile, StandardCopyOption.REPLACE_EXISTING);
 		}
-		catch (Exception e) {
-			fatal(e.getMessage());
+		try (FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE)) {
+			journal.truncate(0L);
 		}
+		version = nextVersion;
+		journalPosition = 0L;
+		pendingChanges = 0;
 	}
 
-	public List<String> findAll() {
-		List<String> result = new ArrayList<>();
-		if (appInfoFile.exists()) {
-			try {
-				Map<String, String> appInfo = loadPropertiesFile(appInfoFile);
-				result = appInfo.entrySet()
-					.stream()
-					.map(e -> String.format("%s=%s", e.getKey(), e.getValue()))
-					.sorted()
-					.collect(Collectors.toList());
+	/**
+	 * Append the records to the journal with a single write, replacing a torn record left by a crashed writer.
+	 */
+	private Void append(List<String> records) throws IOException {
+		if (records.isEmpty()) {
+			return null;
+		}
+		StringBuilder journalEntries = new StringBuilder();
+		records.forEach(record -> journalEntries.append(record).append('\n'));
+		ByteBuffer buffer = ByteBuffer.wrap(journalEntries.toString().getBytes(StandardCharsets.UTF_8));
+		try (FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE)) {
+			if (journal.size() > journalPosition) {
+				message(String.format("Ignoring incomplete record at the end of %s", journalFile));
+				journal.truncate(journalPosition);
 			}
-			catch (Exception e) {
-				fatal(e.getMessage());
+			long position = journalPosition;
+			while (buffer.hasRemaining()) {
+				position += journal.write(buffer, position);
 			}
+			journalPosition = position;
 		}
-		return result;
+		pendingChanges += records.size();
+		return null;
 	}
 
-	public Map<String, String> findAllAsMap() {
-		Map<String, String> result = Collections.EMPTY_MAP;
-		if (appInfoFile.exists()) {
+	/**
+	 * @param bulk true to compact right away, unless in a batch, instead of following the flush policy
+	 */
+	private void changed(boolean bulk) {
+		if (pendingChanges == 0 || batchDepth > 0) {
+			return;
+		}
+		if (bulk) {
+			flush();
+		}
+		else if (pendingChanges >= maxPendingChanges) {
+			scheduleFlush(0L);
+		}
+		else if (flushIntervalMillis > 0) {
+			scheduleFlush(flushIntervalMillis);
+		}
+	}
+
+	private void scheduleFlush(long delayMillis) {
+		if (scheduledFlush != null) {
+			if (scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= delayMillis) {
+				return;
+			}
+			scheduledFlush.cancel(false);
+		}
+		scheduledFlush = flushScheduler.schedule(this::flushInBackground, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void flushInBackground() {
+		if (batchDepth == 0) {
 			try {
-				result = loadPropertiesFile(appInfoFile);
+				flush();
 			}
-			catch (Exception e) {
-				fatal(e.getMessage());
+			catch (UncheckedIOException e) {
+				// the changes stay in the journal, and the next flush tries again
+				message(String.format("Failed to compact %s: %s", journalFile, e.getMessage()));
 			}
 		}
-		return result;
 	}
 
-	public List<String> findByNameAndType(String name, String type) {
-		List<String> result = new ArrayList<>();
-		if (appInfoFile.exists()) {
-			try {
-				Map<String, String> appInfo = loadPropertiesFile(appInfoFile);
-				result = appInfo.keySet()
-					.stream()
-					.filter(k -> matches(type, name, k))
-					.map(appInfo::get)
-					.collect(Collectors.toList());
+	private List<String> addRecords(Collection<? extends AppResource> appResources) {
+		List<String> records = new ArrayList<>();
+		for (AppResource appResource : appResources) {
+			if (put(appResource.getKey(), appResource.getFilename())) {
+				records.add(ADD + appResource.getKey() + "=" + appResource.getFilename());
+			}
+		}
+		return records;
+	}
 
+	private List<String> replaceRecords(Collection<? extends AppResource> appResources, Set<String> superseded) {
+		List<String> records = new ArrayList<>();
+		for (AppResource appResource : appResources) {
+			String previous = appInfo.get(appResource.getKey());
+			if (replace(appResource.getKey(), appResource.getFilename())) {
+				records.add(REPLACE + appResource.getKey() + "=" + appResource.getFilename());
+				if (previous != null) {
+					superseded.add(previous);
+				}
 			}
-			catch (Exception e) {
-				fatal(e.getMessage());
+		}
+		superseded.removeAll(keysByFilename.keySet());
+		return records;
+	}
+
+	private List<String> removeRecords(Collection<String> paths) {
+		List<String> records = new ArrayList<>();
+		for (String path : paths) {
+			if (removeFilename(path)) {
+				records.add(REMOVE + path);
 			}
 		}
-		return result;
+		return records;
 	}
 
-	public boolean matches(String type, String name, String key) {
-		String[] tokens = key.split("\\.");
-		return PatternMatchUtils.simpleMatch(type, tokens[0]) && PatternMatchUtils.simpleMatch(name, tokens[1]);
+	private long snapshotVersion() throws IOException {
+		if (!Files.exists(appInfoFile)) {
+			return 0L;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(appInfoFile, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (line != null && line.startsWith(VERSION)) {
+				try {
+					return Long.parseLong(line.substring(VERSION.length()).trim());
+				}
+				catch (NumberFormatException e) {
+					return 0L;
+				}
+			}
+		}
+		return 0L;
 	}
 
-	private void update(Map<String, String> properties) throws Exception {
-		PrintWriter writer = new PrintWriter(appInfoFile.getPath(), "UTF-8");
-		new TreeMap<>(properties).forEach((k, v) -> writer.println(String.format("%s=%s", k, v)));
-		writer.close();
+	private Map<String, String> loadSnapshot() throws IOException {
+		Properties properties = new Properties();
+		if (Files.exists(appInfoFile)) {
+			try (InputStream in = Files.newInputStream(appInfoFile)) {
+				properties.load(in);
+			}
+		}
+		Map<String, String> snapshot = new HashMap<>();
+		properties.stringPropertyNames().forEach(key -> snapshot.put(key, properties.getProperty(key)));
+		return snapshot;
 	}
 
+	/**
+	 * Apply the complete records between the last position read and {@code length}.
+	 */
+	private void replayJournal(long length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) (length - journalPosition));
+		try (FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+			while (buffer.hasRemaining() && journal.read(buffer, journalPosition + buffer.position()) >= 0) {
+			}
+		}
+		byte[] bytes = buffer.array();
+		int complete = buffer.position();
+		while (complete > 0 && bytes[complete - 1] != '\n') {
+			complete--;
+		}
+		for (String record : new String(bytes, 0, complete, StandardCharsets.UTF_8).split("\n")) {
+			if (record.isEmpty()) {
+				continue;
+			}
+			int separator = record.indexOf('=');
+			if (record.charAt(0) == ADD && separator > 0) {
+				put(record.substring(1, separator), record.substring(separator + 1));
+			}
+			else if (record.charAt(0) == REPLACE && record.indexOf('=', 1) > 1) {
+				separator = record.indexOf('=', 1);
+				replace(record.substring(1, separator), record.substring(separator + 1));
+			}
+			else if (record.charAt(0) == REMOVE) {
+				removeFilename(record.substring(1));
+			}
+			pendingChanges++;
+		}
+		journalPosition += complete;
+	}
+
+	private void clear() {
+		appInfo = new TreeMap<>();
+		keysByTypeAndName = new TreeMap<>();
+		keysByFilename = new HashMap<>();
+	}
+
+	/**
+	 * Add an entry unless the key is already present, and index it by type and name and by file name.
+	 * @return true if the entry was added
+	 */
+	private boolean put(String key, String filename) {
+		if (appInfo.putIfAbsent(key, filename) != null) {
+			return false;
+		}
+		String[] typeAndName = typeAndName(key);
+		keysByTypeAndName.computeIfAbsent(typeAndName[0], type -> new TreeMap<>())
+			.computeIfAbsent(typeAndName[1], name -> new HashSet<>()).add(key);
+		keysByFilename.computeIfAbsent(filename, f -> new HashSet<>()).add(key);
+		return true;
+	}
+
+	/**
+	 * Add an entry, or point an existing key at the file name.
+	 * @return true if the entry was added or changed
+	 */
+	private boolean replace(String key, String filename) {
+		String previous = appInfo.get(key);
+		if (filename.equals(previous)) {
+			return false;
+		}
+		if (previous != null) {
+			appInfo.remove(key);
+			Set<String> keys = keysByFilename.get(previous);
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				keysByFilename.remove(previous);
+			}
+		}
+		return put(key, filename);
+	}
+
+	/**
+	 * Remove every entry for the file name.
+	 * @return true if any entry was removed
+	 */
+	private boolean removeFilename(String filename) {
+		Set<String> keys = keysByFilename.remove(filename);
+		if (keys == null) {
+			return false;
+		}
+		for (String key : keys) {
+			appInfo.remove(key);
+			String[] typeAndName = typeAndName(key);
+			NavigableMap<String, Set<String>> keysByName = keysByTypeAndName.get(typeAndName[0]);
+			Set<String> named = keysByName.get(typeAndName[1]);
+			named.remove(key);
+			if (named.isEmpty()) {
+				keysByName.remove(typeAndName[1]);
+				if (keysByName.isEmpty()) {
+					keysByTypeAndName.remove(typeAndName[0]);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Split a key of the form 'type.name[.classifier]' without a regular expression.
+	 */
+	private static String[] typeAndName(String key) {
+		int first = key.indexOf('.');
+		if (first < 0) {
+			return new String[] { key, "" };
+		}
+		int second = key.indexOf('.', first + 1);
+		return new String[] { key.substring(0, first), second < 0 ? key.substring(first + 1) :
+			key.substring(first + 1, second) };
+	}
 }
@@ -22,8 +22,7 @@ import org.springframework.util.StringUtils;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
  * Represents an application resource, i.e., the information contained in each entry in a app properties file.
@@ -34,12 +33,17 @@ import java.util.regex.Pattern;
 public class AppResource {
 	public static final String WILDCARD = "*";
 
+	private static final String MAVEN_SCHEME = "maven://";
+
 	private final String componentType;
-	private final URL url;
+	private final String value;
 	private final String name;
 	private final String classifier;
 	private final String mavenRepoUrl;
 	private final String filename;
+	private final boolean mavenArtifact;
+	private final MavenCoordinates coordinates;
+	private volatile URL url;
 
 	/**
 	 * @param key          '<name>.<type>.?metadata'
@@ -48,26 +52,54 @@ public class AppResource {
 	 *                     the resource actual URL
 	 */
 	public AppResource(String key, String value, String mavenRepoUrl) {
+		this(key, value, mavenRepoUrl, null, null);
+	}
+
+	/**
+	 * The key and maven coordinates are parsed by scanning for their separators, and the URL of a maven artifact is
+	 * only built when it is first needed, so building a large catalog allocates little more than the resources
+	 * themselves.
+	 *
+	 * @param url      the URL the value resolves to if it is already known, e.g. from a {@link CatalogCache cached
+	 *                 catalog}, or null to resolve it
+	 * @param interned the strings repeated across the entries of the catalog being loaded, which are shared between
+	 *                 its resources, or null not to share them
+	 */
+	AppResource(String key, String value, String mavenRepoUrl, URL url, Map<String, String> interned) {
 		Assert.hasText(key, "key must contain text");
 		Assert.hasText(value, "value must contain text");
-		String[] tokens = key.split("\\.");
-		Assert.isTrue(tokens.length == 2 || tokens.length == 3, String.format("Invalid property key [%s]", key));
+		int first = key.indexOf('.');
+		int second = first < 0 ? -1 : key.indexOf('.', first + 1);
+		int nameEnd = second < 0 ? key.length() : second;
+		Assert.isTrue(first > 0 && nameEnd > first + 1 && (second < 0 || key.indexOf('.', second + 1) < 0),
+			String.format("Invalid property key [%s]", key));
 		this.mavenRepoUrl = mavenRepoUrl;
-		this.componentType = tokens[0];
-		this.name = tokens[1];
-		this.classifier = tokens.length == 3 ? tokens[2] : null;
-		this.url = convertUrl(value);
-		this.filename = parseFileName(this.url);
+		this.componentType = MavenCoordinates.intern(key.substring(0, first), interned);
+		this.name = key.substring(first + 1, nameEnd);
+		this.classifier = second < 0 || second == key.length() - 1 ? null :
+			MavenCoordinates.intern(key.substring(second + 1), interned);
+		this.value = value;
+		this.mavenArtifact = value.startsWith(MAVEN_SCHEME);
+		if (mavenArtifact) {
+			this.coordinates = MavenCoordinates.parse(value.substring(MAVEN_SCHEME.length()), interned);
+			this.filename = coordinates.getFilename();
+			this.url = url;
+		}
+		else {
+			this.coordinates = null;
+			this.url = url != null ? url : convertUrl(value);
+			this.filename = parseFileName(this.url);
+		}
 	}
 
 	private String parseFileName(URL url) {
-		String[] toks = url.getPath().split("/");
-		return toks[toks.length - 1];
+		String path = url.getPath();
+		return path.substring(path.lastIndexOf('/') + 1);
 	}
 
 	protected URL convertUrl(String value) {
 		try {
-			if (value.startsWith("maven://")) {
+			if (value.startsWith(MAVEN_SCHEME)) {
 				return new URL(parseMavenResource(value));
 			}
 			return new URL(value);
@@ -82,10 +114,36 @@ public class AppResource {
 		return componentType;
 	}
 
+	/**
+	 * @return the value the resource was created from, e.g. maven coordinates
+	 */
+	public String getValue() {
+		return value;
+	}
+
 	public URL getUrl() {
+		URL url = this.url;
+		if (url == null) {
+			String resolved = coordinates.toUrl(mavenRepoUrl, filename);
+			try {
+				url = new URL(resolved);
+			}
+			catch (MalformedURLException e) {
+				throw new IllegalStateException(String.format("Cannot resolve %s for %s to a URL: %s is malformed",
+					value, getKey(), resolved), e);
+			}
+			this.url = url;
+		}
 		return url;
 	}
 
+	/**
+	 * @return the base URL of the maven repository the URL of a maven artifact is built against
+	 */
+	public String getMavenRepoUrl() {
+		return mavenRepoUrl;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -98,6 +156,20 @@ public class AppResource {
 		return filename;
 	}
 
+	/**
+	 * @return true if the resource was given as maven coordinates, so its repository also publishes checksum files
+	 */
+	public boolean isMavenArtifact() {
+		return mavenArtifact;
+	}
+
+	/**
+	 * @return '&lt;groupId&gt;:&lt;artifactId&gt;:&lt;version&gt;' of a maven artifact without a classifier, or null
+	 */
+	public String getArtifactCoordinates() {
+		return coordinates == null ? null : coordinates.getArtifactCoordinates();
+	}
+
 	public String getKey() {
 		return StringUtils.hasText(classifier) ?
 			String.join(".", componentType, name, classifier) :
@@ -107,25 +179,8 @@ public class AppResource {
 	public String parseMavenResource(String coordinates) {
 		coordinates = coordinates.replaceFirst("maven://", "");
 		Assert.hasText(coordinates, "coordinates are required");
-		Pattern p = Pattern.compile("([^: ]+):([^: ]+)(:([^: ]*)(:([^: ]+))?)?:([^: ]+)");
-		Matcher m = p.matcher(coordinates);
-		Assert.isTrue(m.matches(), "Bad artifact coordinates " + coordinates
-			+ ", expected format is <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>");
-		String groupId = m.group(1);
-		String artifactId = m.group(2);
-		String extension = StringUtils.hasLength(m.group(4)) ? m.group(4) : "jar";
-		String classifier = StringUtils.hasLength(m.group(6)) ? m.group(6) : "";
-		String version = m.group(7);
-
-		if (StringUtils.isEmpty(classifier)) {
-			return String.format("%s/%s-%s.%s",
-				String.join("/", mavenRepoUrl, groupId.replaceAll("\\.", "/"), artifactId, version), artifactId,
-				version, extension);
-		}
-		return String.format("%s/%s-%s-%s.%s",
-			String.join("/", mavenRepoUrl, groupId.replaceAll("\\.", "/"), artifactId, version), artifactId, version,
-			classifier, extension);
-
+		MavenCoordinates parsed = MavenCoordinates.parse(coordinates);
+		return parsed.toUrl(mavenRepoUrl, parsed.getFilename());
 	}
 
 	public boolean matches(String key, String type) {
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable index of the {@link AppResource}s in an app catalog, e.g. 'config/kafka-stream-apps.properties', by type
+ * and name, with each app's metadata jar, and any other classified artifact such as 'source.time.docs', paired with it.
+ * Built by the {@link CatalogCache}.
+ **/
+public class Catalog {
+
+	private final NavigableMap<String, NavigableMap<String, App>> appsByTypeAndName;
+
+	private final List<AppResource> appResources;
+
+	Catalog(Collection<AppResource> appResources) {
+		NavigableMap<String, NavigableMap<String, App>> index = new TreeMap<>();
+		for (AppResource appResource : appResources) {
+			App app = index.computeIfAbsent(appResource.getComponentType(), t -> new TreeMap<>())
+				.computeIfAbsent(appResource.getName(), n -> new App());
+			if (appResource.getClassifier() == null) {
+				app.app = appResource;
+			}
+			else if ("metadata".equals(appResource.getClassifier())) {
+				app.metadata = appResource;
+			}
+			else {
+				app.classified.put(appResource.getClassifier(), appResource);
+			}
+		}
+		index.replaceAll((type, apps) -> Collections.unmodifiableNavigableMap(apps));
+		this.appsByTypeAndName = Collections.unmodifiableNavigableMap(index);
+		List<AppResource> all = new ArrayList<>();
+		addAll(all, true);
+		this.appResources = Collections.unmodifiableList(all);
+	}
+
+	/**
+	 * @return every resource, apps followed by their metadata and other classified artifacts, sorted by type and name
+	 */
+	public List<AppResource> getAppResources() {
+		return appResources;
+	}
+
+	/**
+	 * @return the apps, without their metadata or other classified artifacts, sorted by type and name
+	 */
+	public List<AppResource> getApps() {
+		List<AppResource> apps = new ArrayList<>();
+		addAll(apps, false);
+		return apps;
+	}
+
+	/**
+	 * @param name a name pattern, which may contain '*' wildcards
+	 * @param type a type pattern, which may contain '*' wildcards
+	 * @return the matching apps with their metadata and other classified artifacts, sorted by type and name
+	 */
+	public List<AppResource> find(String name, String type) {
+		Glob nameGlob = Glob.compile(name);
+		Glob typeGlob = Glob.compile(type);
+		List<AppResource> result = new ArrayList<>();
+		for (NavigableMap<String, App> apps : typeGlob.select(appsByTypeAndName)) {
+			for (App app : nameGlob.select(apps)) {
+				app.addTo(result, true);
+			}
+		}
+		return result;
+	}
+
+	public int size() {
+		return appResources.size();
+	}
+
+	private void addAll(List<AppResource> result, boolean withClassified) {
+		for (Map<String, App> apps : appsByTypeAndName.values()) {
+			for (App app : apps.values()) {
+				app.addTo(result, withClassified);
+			}
+		}
+	}
+
+	private static class App {
+
+		private AppResource app;
+
+		private AppResource metadata;
+
+		private final Map<String, AppResource> classified = new TreeMap<>();
+
+		void addTo(List<AppResource> result, boolean withClassified) {
+			if (app != null) {
+				result.add(app);
+			}
+			if (withClassified) {
+				if (metadata != null) {
+					result.add(metadata);
+				}
+				result.addAll(classified.values());
+			}
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import static org.springframework.cloud.dataflow.apptool.Utils.message;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Compiles app catalogs, e.g. 'config/kafka-stream-apps.properties', into {@link Catalog}s once and caches them by
+ * path, keyed by the modification time and size of the file and the maven repository URL the coordinates resolve
+ * against, so repeated commands and binder switches neither re-read the file nor re-resolve its coordinates.
+ * <p>
+ * A compiled catalog is also written to a binary sidecar, '.&lt;catalog file name&gt;.idx' next to the catalog,
+ * holding each key, value and resolved URL, so a new process loads a large catalog without parsing any coordinates.
+ * A sidecar that is stale, unreadable or written for another repository URL is ignored and rewritten.
+ * <p>
+ * Catalogs larger than the {@link #setMaxFileSize(long) maximum file size} are not held in memory. {@link #find} reads
+ * them with a {@link CatalogReader} each time instead, handing over the last matching entry for each key in the order
+ * the keys first occur in the file.
+ **/
+public class CatalogCache {
+
+	private static final int MAGIC = 0x53434443;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private final ConcurrentMap<Path, Entry> catalogs = new ConcurrentHashMap<>();
+
+	private long maxFileSize = Long.MAX_VALUE;
+
+	/**
+	 * @param maxFileSize the size in bytes above which a catalog file is streamed rather than cached
+	 */
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	/**
+	 * Hand the entries of the catalog matching the name and type patterns to the consumer, from the cached catalog, or
+	 * straight from the file if it is too large to cache.
+	 */
+	public void find(Path file, String mavenRepoUrl, String name, String type, Consumer<AppResource> consumer)
+		throws IOException {
+		if (Stamp.of(file.toAbsolutePath().normalize(), mavenRepoUrl).size > maxFileSize) {
+			CatalogReader.read(file, name, type, mavenRepoUrl, consumer);
+		}
+		else {
+			get(file, mavenRepoUrl).find(name, type).forEach(consumer);
+		}
+	}
+
+	/**
+	 * @return the catalog compiled from the properties file, from the cache if the file has not changed
+	 */
+	public Catalog get(Path file, String mavenRepoUrl) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		Stamp stamp = Stamp.of(key, mavenRepoUrl);
+		Entry entry = catalogs.get(key);
+		if (entry != null && entry.stamp.equals(stamp)) {
+			return entry.catalog;
+		}
+		Catalog catalog = readSidecar(key, stamp);
+		if (catalog == null) {
+			catalog = compile(key, mavenRepoUrl);
+			writeSidecar(key, stamp, catalog);
+		}
+		catalogs.put(key, new Entry(stamp, catalog));
+		return catalog;
+	}
+
+	private Catalog compile(Path file, String mavenRepoUrl) throws IOException {
+		List<AppResource> appResources = new ArrayList<>();
+		try {
+			CatalogReader.read(file, AppResource.WILDCARD, AppResource.WILDCARD, mavenRepoUrl, appResources::add);
+		}
+		catch (IOException | RuntimeException e) {
+			throw new IOException(String.format("cannot read %s: %s", file, e.getMessage()), e);
+		}
+		return new Catalog(appResources);
+	}
+
+	static Path sidecar(Path file) {
+		return file.resolveSibling("." + file.getFileName() + ".idx");
+	}
+
+	private Catalog readSidecar(Path file, Stamp stamp) {
+		Path sidecar = sidecar(file);
+		if (!Files.exists(sidecar)) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !stamp.equals(Stamp.read(in))) {
+				return null;
+			}
+			int size = in.readInt();
+			List<AppResource> appResources = new ArrayList<>(size);
+			Map<String, String> interned = new HashMap<>();
+			for (int i = 0; i < size; i++) {
+				String key = in.readUTF();
+				String value = in.readUTF();
+				URL url = new URL(in.readUTF());
+				appResources.add(new AppResource(key, value, stamp.mavenRepoUrl, url, interned));
+			}
+			return new Catalog(appResources);
+		}
+		catch (IOException | RuntimeException e) {
+			message(String.format("Ignoring unreadable %s: %s", sidecar, e.getMessage()));
+			return null;
+		}
+	}
+
+	private void writeSidecar(Path file, Stamp stamp, Catalog catalog) {
+		Path sidecar = sidecar(file);
+		try {
+			Path temp = Files.createTempFile(sidecar.getParent(), sidecar.getFileName().toString(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				stamp.write(out);
+				out.writeInt(catalog.size());
+				for (AppResource appResource : catalog.getAppResources()) {
+					out.writeUTF(appResource.getKey());
+					out.writeUTF(appResource.getValue());
+					out.writeUTF(appResource.getUrl().toString());
+				}
+			}
+			try {
+				Files.move(temp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e) {
+			// the sidecar only speeds up the next process, so a read-only config directory is fine
+		}
+	}
+
+	private static class Entry {
+
+		private final Stamp stamp;
+
+		private final Catalog catalog;
+
+		Entry(Stamp stamp, Catalog catalog) {
+			this.stamp = stamp;
+			this.catalog = catalog;
+		}
+	}
+
+	/**
+	 * Identifies the content a catalog was compiled from.
+	 */
+	private static class Stamp {
+
+		private final long lastModified;
+
+		private final long size;
+
+		private final String mavenRepoUrl;
+
+		Stamp(long lastModified, long size, String mavenRepoUrl) {
+			this.lastModified = lastModified;
+			this.size = size;
+			this.mavenRepoUrl = mavenRepoUrl == null ? "" : mavenRepoUrl;
+		}
+
+		static Stamp of(Path file, String mavenRepoUrl) throws IOException {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				return new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size(), mavenRepoUrl);
+			}
+			catch (NoSuchFileException e) {
+				throw new IOException(String.format("%s does not exist", file), e);
+			}
+		}
+
+		static Stamp read(DataInputStream in) throws IOException {
+			return new Stamp(in.readLong(), in.readLong(), in.readUTF());
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeLong(lastModified);
+			out.writeLong(size);
+			out.writeUTF(mavenRepoUrl);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Stamp)) {
+				return false;
+			}
+			Stamp other = (Stamp) o;
+			return lastModified == other.lastModified && size == other.size && mavenRepoUrl.equals(other.mavenRepoUrl);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(lastModified, size, mavenRepoUrl);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The apps added, removed or changed between two versions of an app catalog. An app's metadata jar is compared along
+ * with it, so an app whose metadata alone changed is changed too.
+ **/
+public class CatalogDiff {
+
+	private static final String METADATA = ".metadata";
+
+	private final Map<String, String> added = new TreeMap<>();
+
+	private final Map<String, String> removed = new TreeMap<>();
+
+	private final Map<String, String[]> changed = new TreeMap<>();
+
+	/**
+	 * @param previous the entries of the old catalog, empty if there was none
+	 * @param current  the entries of the new catalog
+	 */
+	public static CatalogDiff compute(Map<String, String> previous, Map<String, String> current) {
+		CatalogDiff diff = new CatalogDiff();
+		Map<String, App> apps = new TreeMap<>();
+		previous.forEach((key, value) -> apps.computeIfAbsent(appKey(key), k -> new App()).previous.put(key, value));
+		current.forEach((key, value) -> apps.computeIfAbsent(appKey(key), k -> new App()).current.put(key, value));
+		apps.forEach((key, app) -> {
+			if (app.previous.isEmpty()) {
+				diff.added.put(key, version(app.current, key));
+			}
+			else if (app.current.isEmpty()) {
+				diff.removed.put(key, version(app.previous, key));
+			}
+			else if (!app.previous.equals(app.current)) {
+				diff.changed.put(key, new String[] { version(app.previous, key), version(app.current, key) });
+			}
+		});
+		return diff;
+	}
+
+	/**
+	 * @return the version of each added app, by key
+	 */
+	public Map<String, String> getAdded() {
+		return Collections.unmodifiableMap(added);
+	}
+
+	/**
+	 * @return the version of each removed app, by key
+	 */
+	public Map<String, String> getRemoved() {
+		return Collections.unmodifiableMap(removed);
+	}
+
+	/**
+	 * @return the previous and current version of each changed app, by key
+	 */
+	public Map<String, String[]> getChanged() {
+		return Collections.unmodifiableMap(changed);
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+	}
+
+	/**
+	 * @return the catalog keys to download to bring a repository up to date, i.e. the added and changed apps and
+	 * their metadata
+	 */
+	public Set<String> getKeysToDownload() {
+		Set<String> keys = new LinkedHashSet<>();
+		for (String key : added.keySet()) {
+			keys.add(key);
+			keys.add(key + METADATA);
+		}
+		for (String key : changed.keySet()) {
+			keys.add(key);
+			keys.add(key + METADATA);
+		}
+		return keys;
+	}
+
+	/**
+	 * @return a line per app: '+ key version', '- key version' or '~ key previous -> current'
+	 */
+	public List<String> lines() {
+		List<String> lines = new ArrayList<>();
+		added.forEach((key, version) -> lines.add(String.format("+ %s %s", key, version)));
+		removed.forEach((key, version) -> lines.add(String.format("- %s %s", key, version)));
+		changed.forEach((key, versions) -> lines.add(String.format("~ %s %s -> %s", key, versions[0], versions[1])));
+		return lines;
+	}
+
+	public String summary() {
+		return String.format("%d added, %d removed, %d changed", added.size(), removed.size(), changed.size());
+	}
+
+	private static String appKey(String key) {
+		return key.endsWith(METADATA) ? key.substring(0, key.length() - METADATA.length()) : key;
+	}
+
+	/**
+	 * @return the version from the app's maven coordinates, or its URL
+	 */
+	private static String version(Map<String, String> entries, String key) {
+		String value = entries.get(key);
+		if (value == null) {
+			value = Objects.toString(entries.get(key + METADATA), "");
+		}
+		return value.startsWith("maven://") ? value.substring(value.lastIndexOf(':') + 1) : value;
+	}
+
+	private static class App {
+
+		private final Map<String, String> previous = new TreeMap<>();
+
+		private final Map<String, String> current = new TreeMap<>();
+	}
+}
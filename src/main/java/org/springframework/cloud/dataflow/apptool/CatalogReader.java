@@ -0,0 +1,326 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads an app catalog, e.g. 'config/kafka-stream-apps.properties', a line at a time and hands the entries whose keys
+ * match the name and type patterns to a consumer, so memory use grows with the number of matching keys rather than
+ * the size of the catalog. The key of each line is matched in place in the read buffer; strings and the
+ * {@link AppResource} are only created for matching entries.
+ * <p>
+ * Lines follow the {@link java.util.Properties#load(Reader)} format, including comments, ':' and whitespace separators,
+ * continuation lines and escapes, read as ISO 8859-1. As with {@link java.util.Properties}, the last of the entries
+ * for a key wins, so the matching entries are only handed over once the whole catalog has been read.
+ * <p>
+ * An instance reuses its buffers, and shares the type, group id and version strings repeated across the entries it
+ * reads, so it must not be shared between threads.
+ **/
+public class CatalogReader {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final Predicate<CharSequence> nameMatcher;
+
+	private final Predicate<CharSequence> typeMatcher;
+
+	private final String mavenRepoUrl;
+
+	private final Segment type = new Segment();
+
+	private final Segment name = new Segment();
+
+	private final Map<String, String> interned = new HashMap<>();
+
+	private char[] line = new char[256];
+
+	private int length;
+
+	/**
+	 * @param name a name pattern, which may contain '*' wildcards
+	 * @param type a type pattern, which may contain '*' wildcards
+	 */
+	public CatalogReader(String name, String type, String mavenRepoUrl) {
+		this.nameMatcher = Glob.compile(name).matcher();
+		this.typeMatcher = Glob.compile(type).matcher();
+		this.mavenRepoUrl = mavenRepoUrl;
+	}
+
+	/**
+	 * Read the catalog file, handing the matching entries to the consumer in the order their keys first occur.
+	 */
+	public static void read(Path file, String name, String type, String mavenRepoUrl,
+		Consumer<AppResource> consumer) throws IOException {
+		try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.ISO_8859_1)) {
+			new CatalogReader(name, type, mavenRepoUrl).read(reader, consumer);
+		}
+	}
+
+	public void read(Reader reader, Consumer<AppResource> consumer) throws IOException {
+		Map<String, AppResource> entries = new LinkedHashMap<>();
+		read(reader, entries);
+		entries.values().forEach(consumer);
+	}
+
+	private void read(Reader reader, Map<String, AppResource> entries) throws IOException {
+		Consumer<AppResource> consumer = appResource -> entries.put(appResource.getKey(), appResource);
+		char[] buffer = new char[BUFFER_SIZE];
+		boolean continuation = false;
+		boolean skipLineFeed = false;
+		length = 0;
+		int read;
+		while ((read = reader.read(buffer)) >= 0) {
+			for (int i = 0; i < read; i++) {
+				char c = buffer[i];
+				if (skipLineFeed) {
+					skipLineFeed = false;
+					if (c == '\n') {
+						continue;
+					}
+				}
+				if (c == '\n' || c == '\r') {
+					skipLineFeed = c == '\r';
+					continuation = endsWithContinuation();
+					if (continuation) {
+						length--;
+					}
+					else {
+						entry(consumer);
+						length = 0;
+					}
+					continue;
+				}
+				if (continuation) {
+					if (isWhitespace(c)) {
+						continue;
+					}
+					continuation = false;
+				}
+				append(c);
+			}
+		}
+		if (endsWithContinuation()) {
+			length--;
+		}
+		entry(consumer);
+		length = 0;
+	}
+
+	private void append(char c) {
+		if (length == line.length) {
+			char[] grown = new char[line.length * 2];
+			System.arraycopy(line, 0, grown, 0, length);
+			line = grown;
+		}
+		line[length++] = c;
+	}
+
+	/**
+	 * @return true if the line is an entry ending with an odd number of backslashes, i.e. continued on the next line
+	 */
+	private boolean endsWithContinuation() {
+		int start = firstNonWhitespace();
+		if (start == length || line[start] == '#' || line[start] == '!') {
+			return false;
+		}
+		int backslashes = 0;
+		for (int i = length - 1; i >= start && line[i] == '\\'; i--) {
+			backslashes++;
+		}
+		return backslashes % 2 == 1;
+	}
+
+	private void entry(Consumer<AppResource> consumer) {
+		int start = firstNonWhitespace();
+		if (start == length || line[start] == '#' || line[start] == '!') {
+			return;
+		}
+		for (int i = start; i < length; i++) {
+			if (line[i] == '\\') {
+				escapedEntry(start, consumer);
+				return;
+			}
+		}
+		int keyEnd = start;
+		while (keyEnd < length && !isSeparator(line[keyEnd])) {
+			keyEnd++;
+		}
+		if (matches(line, start, keyEnd)) {
+			int valueStart = valueStart(keyEnd);
+			consumer.accept(new AppResource(new String(line, start, keyEnd - start),
+				new String(line, valueStart, length - valueStart), mavenRepoUrl, null, interned));
+		}
+	}
+
+	/**
+	 * The rare entry with escapes is unescaped into strings before it is matched.
+	 */
+	private void escapedEntry(int start, Consumer<AppResource> consumer) {
+		StringBuilder key = new StringBuilder();
+		int i = start;
+		while (i < length && !isSeparator(line[i])) {
+			i = line[i] == '\\' ? unescape(i + 1, key) : append(key, i);
+		}
+		StringBuilder value = new StringBuilder();
+		i = valueStart(i);
+		while (i < length) {
+			i = line[i] == '\\' ? unescape(i + 1, value) : append(value, i);
+		}
+		char[] keyChars = key.toString().toCharArray();
+		if (matches(keyChars, 0, keyChars.length)) {
+			consumer.accept(new AppResource(key.toString(), value.toString(), mavenRepoUrl, null, interned));
+		}
+	}
+
+	private int append(StringBuilder out, int i) {
+		out.append(line[i]);
+		return i + 1;
+	}
+
+	/**
+	 * Append the character escaped at {@code i} to {@code out}.
+	 * @return the index after the escape sequence
+	 */
+	private int unescape(int i, StringBuilder out) {
+		if (i == length) {
+			return i;
+		}
+		char c = line[i];
+		if (c == 'u') {
+			if (i + 4 >= length) {
+				throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+			}
+			int value = 0;
+			for (int j = i + 1; j <= i + 4; j++) {
+				int digit = Character.digit(line[j], 16);
+				if (digit < 0) {
+					throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+				}
+				value = (value << 4) + digit;
+			}
+			out.append((char) value);
+			return i + 5;
+		}
+		out.append(c == 't' ? '\t' : c == 'r' ? '\r' : c == 'n' ? '\n' : c == 'f' ? '\f' : c);
+		return i + 1;
+	}
+
+	/**
+	 * Match the type, up to the first '.', and the name, up to the next '.', of the key between {@code start} and
+	 * {@code end}.
+	 */
+	private boolean matches(char[] chars, int start, int end) {
+		int first = start;
+		while (first < end && chars[first] != '.') {
+			first++;
+		}
+		if (!typeMatcher.test(type.set(chars, start, first))) {
+			return false;
+		}
+		if (first == end) {
+			return nameMatcher.test(name.set(chars, end, end));
+		}
+		int second = first + 1;
+		while (second < end && chars[second] != '.') {
+			second++;
+		}
+		return nameMatcher.test(name.set(chars, first + 1, second));
+	}
+
+	/**
+	 * Skip the separator after the key, which may be '=' or ':' surrounded by whitespace, or whitespace alone.
+	 */
+	private int valueStart(int keyEnd) {
+		int i = keyEnd;
+		while (i < length && isWhitespace(line[i])) {
+			i++;
+		}
+		if (i < length && (line[i] == '=' || line[i] == ':')) {
+			i++;
+			while (i < length && isWhitespace(line[i])) {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	private int firstNonWhitespace() {
+		int i = 0;
+		while (i < length && isWhitespace(line[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == '=' || c == ':' || isWhitespace(c);
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\f';
+	}
+
+	/**
+	 * A window on a character array, so part of a line can be matched without copying it.
+	 */
+	private static final class Segment implements CharSequence {
+
+		private char[] chars;
+
+		private int offset;
+
+		private int length;
+
+		Segment set(char[] chars, int start, int end) {
+			this.chars = chars;
+			this.offset = start;
+			this.length = end - start;
+			return this;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[offset + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(chars, offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, offset, length);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import static org.springframework.cloud.dataflow.apptool.Utils.message;
+
+import org.springframework.cloud.dataflow.apptool.download.TransferClient;
+import org.springframework.cloud.dataflow.apptool.download.TransferClient.Response;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetches the app catalogs, e.g. 'config/kafka-stream-apps.properties', from their published URLs concurrently.
+ * <p>
+ * The 'ETag' and 'Last-Modified' of each fetched catalog are recorded in '.catalog-state.properties' in the config
+ * directory and sent as 'If-None-Match' and 'If-Modified-Since' on the next refresh, so catalogs that have not changed
+ * cost a 304 response each. A changed catalog, like the validators, is written to a temporary file and atomically
+ * renamed into place, so readers never see a partial file, and compared with the previous version to produce a
+ * {@link CatalogDiff}.
+ **/
+public class CatalogRefresher {
+
+	private static final String ETAG = ".etag";
+
+	private static final String LAST_MODIFIED = ".last-modified";
+
+	private final Path configDirectory;
+
+	private final Map<String, URL> catalogUrls;
+
+	private final TransferClient transferClient;
+
+	/**
+	 * @param configDirectory the directory holding the catalogs
+	 * @param catalogUrls     the published URL of each catalog, by catalog name, e.g. 'kafka-stream-apps'
+	 */
+	public CatalogRefresher(String configDirectory, Map<String, URL> catalogUrls, TransferClient transferClient) {
+		this.configDirectory = Paths.get(configDirectory);
+		this.catalogUrls = new LinkedHashMap<>(catalogUrls);
+		this.transferClient = transferClient;
+	}
+
+	/**
+	 * @return the catalog file for the catalog name
+	 */
+	public Path catalogFile(String name) {
+		return configDirectory.resolve(name + ".properties");
+	}
+
+	/**
+	 * Fetch every catalog, waiting for all of them.
+	 * @return the result for each catalog, in the configured order
+	 */
+	public List<Result> refresh() {
+		Map<String, String> validators = loadValidators();
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("catalog-refresh-");
+		threadFactory.setDaemon(true);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, catalogUrls.size()), threadFactory);
+		try {
+			List<CompletableFuture<Result>> futures = new ArrayList<>();
+			catalogUrls.forEach((name, url) -> futures.add(
+				CompletableFuture.supplyAsync(() -> refresh(name, url, validators), executor)));
+			List<Result> results = new ArrayList<>();
+			futures.forEach(future -> results.add(future.join()));
+			Map<String, String> updated = new TreeMap<>(validators);
+			results.forEach(result -> result.validators.forEach((key, value) -> {
+				if (StringUtils.hasText(value)) {
+					updated.put(key, value);
+				}
+				else {
+					updated.remove(key);
+				}
+			}));
+			if (!updated.equals(validators)) {
+				saveValidators(updated);
+			}
+			return results;
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private Result refresh(String name, URL url, Map<String, String> validators) {
+		Path file = catalogFile(name);
+		Map<String, String> headers = new HashMap<>();
+		if (Files.exists(file)) {
+			String etag = validators.get(name + ETAG);
+			String lastModified = validators.get(name + LAST_MODIFIED);
+			if (StringUtils.hasText(etag)) {
+				headers.put("If-None-Match", etag);
+			}
+			if (StringUtils.hasText(lastModified)) {
+				headers.put("If-Modified-Since", lastModified);
+			}
+		}
+		try (Response response = transferClient.get(url, headers)) {
+			if (response.getStatus() == 304) {
+				return new Result(name, null, null);
+			}
+			if (response.getStatus() != 200) {
+				return new Result(name, null, String.format("%s returned %d %s", url, response.getStatus(),
+					response.getReason()));
+			}
+			byte[] content;
+			try (InputStream in = response.getBody()) {
+				content = StreamUtils.copyToByteArray(in);
+			}
+			Map<String, String> current = parse(new ByteArrayInputStream(content));
+			Map<String, String> previous = Files.exists(file) ? parse(Files.newInputStream(file)) :
+				Collections.emptyMap();
+			write(file, content);
+			Result result = new Result(name, CatalogDiff.compute(previous, current), null);
+			result.validators.put(name + ETAG, response.getHeader("ETag"));
+			result.validators.put(name + LAST_MODIFIED, response.getHeader("Last-Modified"));
+			return result;
+		}
+		catch (IOException | RuntimeException e) {
+			return new Result(name, null, String.format("%s: %s", url, e.getMessage()));
+		}
+	}
+
+	private static Map<String, String> parse(InputStream in) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream input = in) {
+			properties.load(input);
+		}
+		Map<String, String> entries = new HashMap<>();
+		properties.stringPropertyNames().forEach(key -> entries.put(key, properties.getProperty(key)));
+		return entries;
+	}
+
+	private static void write(Path file, byte[] content) throws IOException {
+		Files.createDirectories(file.getParent());
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, content);
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private Path validatorsFile() {
+		return configDirectory.resolve(".catalog-state.properties");
+	}
+
+	private Map<String, String> loadValidators() {
+		Path file = validatorsFile();
+		if (!Files.exists(file)) {
+			return new TreeMap<>();
+		}
+		try {
+			return new TreeMap<>(parse(Files.newInputStream(file)));
+		}
+		catch (IOException e) {
+			message(String.format("Ignoring unreadable %s: %s", file, e.getMessage()));
+			return new TreeMap<>();
+		}
+	}
+
+	private void saveValidators(Map<String, String> validators) {
+		StringBuilder content = new StringBuilder();
+		validators.forEach((k, v) -> content.append(String.format("%s=%s%n", k, v)));
+		try {
+			write(validatorsFile(), content.toString().getBytes(StandardCharsets.ISO_8859_1));
+		}
+		catch (IOException e) {
+			message("Error:" + e.getMessage());
+		}
+	}
+
+	/**
+	 * The outcome of refreshing one catalog.
+	 */
+	public static class Result {
+
+		private final String name;
+
+		private final CatalogDiff diff;
+
+		private final String failure;
+
+		private final Map<String, String> validators = new HashMap<>();
+
+		Result(String name, CatalogDiff diff, String failure) {
+			this.name = name;
+			this.diff = diff;
+			this.failure = failure;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the changes, or null if the catalog was not modified or could not be fetched
+		 */
+		public CatalogDiff getDiff() {
+			return diff;
+		}
+
+		/**
+		 * @return why the catalog could not be fetched, or null
+		 */
+		public String getFailure() {
+			return failure;
+		}
+
+		public boolean isModified() {
+			return diff != null;
+		}
+	}
+}
@@ -41,6 +41,20 @@ public abstract class ComponentTypeValidator {
 		return true;
 	}
 
+	/**
+	 * Like {@link #isValidStreamAppType(String)}, without the message for an unsupported type.
+	 */
+	public static boolean isStreamAppType(String type) {
+		return SUPPORTED_STREAM_APP_TYPES.contains(type);
+	}
+
+	/**
+	 * Like {@link #isValidAppType(String)}, without the message for an unsupported type.
+	 */
+	public static boolean isSupportedAppType(String type) {
+		return SUPPORTED_APP_TYPES.contains(type);
+	}
+
 	public static boolean isValidAppType(String type) {
 		if (!SUPPORTED_APP_TYPES.contains(type) ) {
 			message("Supported stream component types are " + StringUtils.collectionToDelimitedString(
@@ -18,8 +18,7 @@ package org.springframework.cloud.dataflow.apptool;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-
-import org.springframework.core.io.UrlResource;
+import java.util.function.Predicate;
 
 /**
  * Represents an custom app resource that is given by a URL and does not have an entry in any of the *-apps.properties
@@ -47,8 +46,12 @@ public class CustomAppResource extends AppResource {
 		return this.metadataUrl == null ? deriveMetadataURL() : this.metadataUrl;
 	}
 
-	public AppResource getMetadataResource() {
-		if (new UrlResource(getMetadataURL()).exists()) {
+	/**
+	 * @param exists tests whether a URL exists, typically with a HEAD request through a shared client
+	 * @return the metadata resource, or null if there is none
+	 */
+	public AppResource getMetadataResource(Predicate<URL> exists) {
+		if (exists.test(getMetadataURL())) {
 			return new AppResource(getKey() + ".metadata", getMetadataURL().toString(), null);
 		}
 		return null;
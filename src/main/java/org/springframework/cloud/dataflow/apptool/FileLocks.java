@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive locks, held with {@link FileChannel#tryLock()} on files in the '.locks' directory of the local repository,
+ * that coordinate processes sharing the repository, e.g. on an NFS or host path volume. File locks are held on behalf
+ * of the whole JVM, so threads of the same process are serialized with a {@link ReentrantLock} per lock file first; a
+ * thread that already holds a lock may take it again.
+ * <p>
+ * A lock held by another process is retried with exponential backoff until the timeout, by default
+ * {@link #TIMEOUT_MILLIS}, has passed.
+ **/
+public abstract class FileLocks {
+
+	public static final String LOCK_DIRECTORY = ".locks";
+
+	static final long TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+	private static final long MAX_BACKOFF_MILLIS = 500L;
+
+	private static final ConcurrentMap<Path, ReentrantLock> localLocks = new ConcurrentHashMap<>();
+
+	/**
+	 * An action to perform while holding a lock.
+	 */
+	@FunctionalInterface
+	public interface LockedAction<T> {
+
+		T run() throws IOException;
+	}
+
+	/**
+	 * @return the lock file for {@code name} in the repository directory
+	 */
+	public static Path lockFile(String localRepoDirectory, String name) {
+		return Paths.get(localRepoDirectory, LOCK_DIRECTORY, name + ".lock");
+	}
+
+	public static <T> T withLock(Path lockFile, LockedAction<T> action) throws IOException {
+		return withLock(lockFile, TIMEOUT_MILLIS, action);
+	}
+
+	/**
+	 * @param timeoutMillis how long to wait for a lock held by another process
+	 * @throws IOException if the lock is not taken within the timeout, or the action fails
+	 */
+	public static <T> T withLock(Path lockFile, long timeoutMillis, LockedAction<T> action) throws IOException {
+		Path key = lockFile.toAbsolutePath().normalize();
+		ReentrantLock localLock = localLocks.computeIfAbsent(key, k -> new ReentrantLock());
+		localLock.lock();
+		try {
+			if (localLock.getHoldCount() > 1) {
+				return action.run();
+			}
+			Files.createDirectories(key.getParent());
+			try (FileChannel channel = FileChannel.open(key, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				FileLock fileLock = acquire(channel, key, timeoutMillis);
+				try {
+					return action.run();
+				}
+				finally {
+					fileLock.release();
+				}
+			}
+		}
+		finally {
+			localLock.unlock();
+		}
+	}
+
+	private static FileLock acquire(FileChannel channel, Path lockFile, long timeoutMillis) throws IOException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long backoff = 10L;
+		while (true) {
+			FileLock fileLock = channel.tryLock();
+			if (fileLock != null) {
+				return fileLock;
+			}
+			if (System.currentTimeMillis() > deadline) {
+				throw new IOException(String.format("timed out waiting for lock %s", lockFile));
+			}
+			try {
+				Thread.sleep(backoff);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(String.format("interrupted waiting for lock %s", lockFile));
+			}
+			backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled name pattern with the same semantics as
+ * {@link org.springframework.util.PatternMatchUtils#simpleMatch(String, String)}, where '*' matches any sequence of
+ * characters. Compile a pattern once and match it against many names. The literal prefix before the first '*' is
+ * exposed so sorted indexes can be narrowed to a range before matching.
+ **/
+final class Glob {
+
+	private final String pattern;
+
+	private final String prefix;
+
+	private final Pattern regex;
+
+	private Glob(String pattern) {
+		this.pattern = pattern;
+		int wildcard = pattern.indexOf('*');
+		this.prefix = wildcard < 0 ? pattern : pattern.substring(0, wildcard);
+		this.regex = wildcard < 0 ? null : toRegex(pattern);
+	}
+
+	static Glob compile(String pattern) {
+		return new Glob(pattern);
+	}
+
+	/**
+	 * @return true if the pattern has no wildcard and matches only itself
+	 */
+	boolean isLiteral() {
+		return regex == null;
+	}
+
+	/**
+	 * @return the part of the pattern before the first wildcard, which every match starts with
+	 */
+	String getPrefix() {
+		return prefix;
+	}
+
+	boolean matches(String name) {
+		if (name == null) {
+			return false;
+		}
+		return regex == null ? pattern.equals(name) : name.startsWith(prefix) && regex.matcher(name).matches();
+	}
+
+	/**
+	 * @return a predicate matching character sequences, such as a window on a read buffer, without allocating per
+	 * match. It reuses a single regex matcher, so it must not be shared between threads.
+	 */
+	Predicate<CharSequence> matcher() {
+		if (regex == null) {
+			return pattern::contentEquals;
+		}
+		if ("*".equals(pattern)) {
+			return name -> true;
+		}
+		Matcher matcher = regex.matcher("");
+		return name -> startsWith(name, prefix) && matcher.reset(name).matches();
+	}
+
+	/**
+	 * @return the values of the index whose keys match, looking only at the keys sharing the literal prefix
+	 */
+	<V> Collection<V> select(NavigableMap<String, V> index) {
+		if (isLiteral()) {
+			V value = index.get(prefix);
+			return value == null ? Collections.emptyList() : Collections.singletonList(value);
+		}
+		NavigableMap<String, V> candidates = prefix.isEmpty() ? index :
+			index.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+		List<V> result = new ArrayList<>();
+		candidates.forEach((k, v) -> {
+			if (matches(k)) {
+				result.add(v);
+			}
+		});
+		return result;
+	}
+
+	private static boolean startsWith(CharSequence name, String prefix) {
+		if (name.length() < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (name.charAt(i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Pattern toRegex(String pattern) {
+		String[] literals = pattern.split("\\*", -1);
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < literals.length; i++) {
+			if (i > 0) {
+				regex.append(".*");
+			}
+			if (!literals[i].isEmpty()) {
+				regex.append(Pattern.quote(literals[i]));
+			}
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.util.Map;
+
+/**
+ * Maven coordinates of the form '&lt;groupId&gt;:&lt;artifactId&gt;[:&lt;extension&gt;[:&lt;classifier&gt;]]:&lt;version&gt;',
+ * parsed with a single scan for the separators instead of a regular expression. Catalogs repeat the same few group
+ * ids and versions for every entry, so while a catalog is loaded these are interned in a map kept for that load and
+ * shared between its instances.
+ **/
+final class MavenCoordinates {
+
+	private static final String DEFAULT_EXTENSION = "jar";
+
+	private final String groupId;
+
+	private final String artifactId;
+
+	private final String extension;
+
+	private final String classifier;
+
+	private final String version;
+
+	private MavenCoordinates(String groupId, String artifactId, String extension, String classifier,
+		String version) {
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.extension = extension;
+		this.classifier = classifier;
+		this.version = version;
+	}
+
+	/**
+	 * @param coordinates the coordinates, without the 'maven://' prefix
+	 * @throws IllegalArgumentException if the coordinates are malformed
+	 */
+	static MavenCoordinates parse(String coordinates) {
+		return parse(coordinates, null);
+	}
+
+	/**
+	 * @param coordinates the coordinates, without the 'maven://' prefix
+	 * @param interned    the strings interned so far by the catalog load, or null not to intern
+	 * @throws IllegalArgumentException if the coordinates are malformed
+	 */
+	static MavenCoordinates parse(String coordinates, Map<String, String> interned) {
+		int[] separators = new int[4];
+		int count = 0;
+		for (int i = 0; i < coordinates.length(); i++) {
+			char c = coordinates.charAt(i);
+			if (c == ':') {
+				if (count == separators.length) {
+					throw badCoordinates(coordinates);
+				}
+				separators[count++] = i;
+			}
+			else if (c == ' ') {
+				throw badCoordinates(coordinates);
+			}
+		}
+		if (count < 2) {
+			throw badCoordinates(coordinates);
+		}
+		String groupId = coordinates.substring(0, separators[0]);
+		String artifactId = coordinates.substring(separators[0] + 1, separators[1]);
+		String version = coordinates.substring(separators[count - 1] + 1);
+		String extension = count > 2 ? coordinates.substring(separators[1] + 1, separators[2]) : "";
+		String classifier = count > 3 ? coordinates.substring(separators[2] + 1, separators[3]) : "";
+		if (groupId.isEmpty() || artifactId.isEmpty() || version.isEmpty() || (count > 3 && classifier.isEmpty())) {
+			throw badCoordinates(coordinates);
+		}
+		return new MavenCoordinates(intern(groupId, interned), artifactId,
+			extension.isEmpty() ? DEFAULT_EXTENSION : intern(extension, interned),
+			classifier.isEmpty() ? null : classifier, intern(version, interned));
+	}
+
+	/**
+	 * @return '&lt;groupId&gt;:&lt;artifactId&gt;:&lt;version&gt;', as in a 'pom.properties', or null if the
+	 * coordinates have a classifier, i.e. name a secondary artifact such as a metadata jar
+	 */
+	String getArtifactCoordinates() {
+		return classifier != null ? null : groupId + ':' + artifactId + ':' + version;
+	}
+
+	String getFilename() {
+		StringBuilder filename = new StringBuilder(artifactId.length() + version.length() + 24)
+			.append(artifactId).append('-').append(version);
+		if (classifier != null) {
+			filename.append('-').append(classifier);
+		}
+		return filename.append('.').append(extension).toString();
+	}
+
+	/**
+	 * @return the URL of the artifact in the repository, as a string
+	 */
+	String toUrl(String repositoryUrl, String filename) {
+		StringBuilder url = new StringBuilder(String.valueOf(repositoryUrl).length() + groupId.length()
+			+ artifactId.length() + version.length() + filename.length() + 4);
+		url.append(repositoryUrl).append('/');
+		for (int i = 0; i < groupId.length(); i++) {
+			char c = groupId.charAt(i);
+			url.append(c == '.' ? '/' : c);
+		}
+		return url.append('/').append(artifactId).append('/').append(version).append('/').append(filename)
+			.toString();
+	}
+
+	/**
+	 * @param interned the strings interned so far, or null not to intern
+	 * @return a shared instance equal to the value, for strings repeated across many catalog entries
+	 */
+	static String intern(String value, Map<String, String> interned) {
+		if (interned == null) {
+			return value;
+		}
+		String existing = interned.putIfAbsent(value, value);
+		return existing == null ? value : existing;
+	}
+
+	private static IllegalArgumentException badCoordinates(String coordinates) {
+		return new IllegalArgumentException("Bad artifact coordinates " + coordinates
+			+ ", expected format is <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>");
+	}
+}
@@ -16,12 +16,29 @@
 
 package org.springframework.cloud.dataflow.apptool;
 
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.Banner;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.dataflow.apptool.download.AppResourceDownloader;
+import org.springframework.cloud.dataflow.apptool.download.ArtifactStateStore;
+import org.springframework.cloud.dataflow.apptool.download.DownloadMetrics;
+import org.springframework.cloud.dataflow.apptool.download.MirrorSelector;
+import org.springframework.cloud.dataflow.apptool.download.RateLimiter;
+import org.springframework.cloud.dataflow.apptool.download.TransferClient;
+import org.springframework.cloud.dataflow.apptool.fsck.RepositoryChecker;
 import org.springframework.context.annotation.Bean;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author David Turanski
@@ -39,7 +56,101 @@ public class ScdfAppToolApplication {
 	}
 
 	@Bean
-	AppInfo appInfo(@Value("${local.repo.directory}") String localRepoDirectory) {
-		return new AppInfo(localRepoDirectory);
+	AppInfo appInfo(@Value("${local.repo.directory}") String localRepoDirectory,
+		@Value("${app-info.flush.max-changes:100}") int maxPendingChanges,
+		@Value("${app-info.flush.interval:5000}") long flushIntervalMillis,
+		@Value("${app-info.lock-timeout:600000}") long lockTimeoutMillis) {
+		AppInfo appInfo = new AppInfo(localRepoDirectory);
+		appInfo.setFlushPolicy(maxPendingChanges, flushIntervalMillis);
+		appInfo.setLockTimeout(lockTimeoutMillis);
+		return appInfo;
+	}
+
+	@Bean
+	CatalogCache catalogCache(@Value("${catalog.cache.max-file-size:8MB}") String maxFileSize) {
+		CatalogCache catalogCache = new CatalogCache();
+		catalogCache.setMaxFileSize(DataSize.parse(maxFileSize).toBytes());
+		return catalogCache;
+	}
+
+	@Bean
+	CatalogRefresher catalogRefresher(@Value("${catalog.kafka.url}") URL kafkaUrl,
+		@Value("${catalog.rabbit.url}") URL rabbitUrl, @Value("${catalog.task.url}") URL taskUrl,
+		TransferClient transferClient) {
+		Map<String, URL> catalogUrls = new LinkedHashMap<>();
+		catalogUrls.put("kafka-stream-apps", kafkaUrl);
+		catalogUrls.put("rabbit-stream-apps", rabbitUrl);
+		catalogUrls.put("task-apps", taskUrl);
+		return new CatalogRefresher("config", catalogUrls, transferClient);
+	}
+
+	@Bean
+	ArtifactStateStore artifactStateStore(@Value("${local.repo.directory}") String localRepoDirectory) {
+		return new ArtifactStateStore(localRepoDirectory);
+	}
+
+	@Bean
+	TransferClient transferClient(@Value("${download.max-concurrent:8}") int maxConcurrent,
+		@Value("${download.max-concurrent-per-host:4}") int maxConcurrentPerHost,
+		@Value("${download.connect-timeout:10000}") int connectTimeout,
+		@Value("${download.read-timeout:60000}") int readTimeout,
+		@Value("${download.parallel-ranges:4}") int parallelRanges) {
+		// a transfer holds its response open while fetching the checksum, and then one connection per range
+		int connectionsPerTransfer = Math.max(2, parallelRanges);
+		return new TransferClient(maxConcurrent * connectionsPerTransfer, maxConcurrentPerHost * connectionsPerTransfer,
+			connectTimeout, readTimeout);
+	}
+
+	@Bean
+	MirrorSelector mirrorSelector(@Value("${maven.repo.url}") String[] mavenRepoUrls, TransferClient transferClient) {
+		return new MirrorSelector(mavenRepoUrls, transferClient);
+	}
+
+	@Bean
+	RateLimiter rateLimiter(@Value("${download.max-rate:}") String maxRate) {
+		return new RateLimiter(RateLimiter.parseRate(maxRate));
+	}
+
+	@Bean
+	PrometheusMeterRegistry meterRegistry() {
+		return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+	}
+
+	@Bean
+	DownloadMetrics downloadMetrics(PrometheusMeterRegistry meterRegistry,
+		@Value("${download.metrics.file:}") String exportFile) {
+		DownloadMetrics downloadMetrics = new DownloadMetrics(meterRegistry);
+		downloadMetrics.setExportFile(exportFile);
+		return downloadMetrics;
+	}
+
+	@Bean
+	AppResourceDownloader appResourceDownloader(@Value("${local.repo.directory}") String localRepoDirectory,
+		@Value("${download.conditional:true}") boolean conditional,
+		@Value("${download.checksum.sha256:false}") boolean sha256,
+		@Value("${download.parallel-ranges:4}") int parallelRanges,
+		@Value("${download.parallel-ranges-threshold:16MB}") String parallelRangesThreshold,
+		AppInfo appInfo, ArtifactStateStore artifactStateStore, TransferClient transferClient,
+		MirrorSelector mirrorSelector, RateLimiter rateLimiter, DownloadMetrics downloadMetrics) {
+		AppResourceDownloader appResourceDownloader = new AppResourceDownloader(localRepoDirectory, appInfo,
+			artifactStateStore, transferClient, mirrorSelector);
+		appResourceDownloader.setConditional(conditional);
+		appResourceDownloader.setSha256(sha256);
+		appResourceDownloader.setRateLimiter(rateLimiter);
+		appResourceDownloader.setMetrics(downloadMetrics);
+		appResourceDownloader.setParallelRanges(parallelRanges, DataSize.parse(parallelRangesThreshold).toBytes());
+		return appResourceDownloader;
+	}
+
+	@Bean
+	RepositoryChecker repositoryChecker(@Value("${local.repo.directory}") String localRepoDirectory,
+		@Value("${repo.fsck.parallelism:0}") int parallelism, AppInfo appInfo,
+		ArtifactStateStore artifactStateStore, CatalogCache catalogCache, MirrorSelector mirrorSelector) {
+		RepositoryChecker repositoryChecker = new RepositoryChecker(localRepoDirectory, appInfo, artifactStateStore,
+			parallelism);
+		repositoryChecker.setCatalogs(catalogCache, Arrays.asList(Paths.get("config", "kafka-stream-apps.properties"),
+			Paths.get("config", "rabbit-stream-apps.properties"), Paths.get("config", "task-apps.properties")),
+			mirrorSelector.getPrimary());
+		return repositoryChecker;
 	}
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * What it takes to bring the repository in line with the resolved entries of a catalog. An entry whose key is already
+ * indexed with the same file name, and whose file is present, is left alone without any network request. Every other
+ * entry is downloaded. The file an indexed key pointed at before its catalog entry moved to a new version is replaced.
+ * Indexed entries in scope that the catalog does not list, such as apps added with 'repo add', are only reported;
+ * the catalog does not say they are obsolete, so their files are never deleted.
+ **/
+public class SyncPlan {
+
+	private final List<AppResource> toDownload = new ArrayList<>();
+
+	private final Map<String, String> unlisted = new TreeMap<>();
+
+	private final Set<String> replacedFilenames = new TreeSet<>();
+
+	private int unchanged;
+
+	/**
+	 * @param target  the catalog entries the repository should hold
+	 * @param indexed the file name of each indexed key, see {@link AppInfo#findAllAsMap()}
+	 * @param present tests whether a file name is present in the repository directory
+	 * @param inScope tests whether an indexed key is covered by the sync, e.g. matches the name and type patterns
+	 */
+	public static SyncPlan compute(Collection<AppResource> target, Map<String, String> indexed,
+		Predicate<String> present, Predicate<String> inScope) {
+		SyncPlan plan = new SyncPlan();
+		Set<String> targetKeys = new HashSet<>();
+		Set<String> replaced = new HashSet<>();
+		Set<String> referenced = new HashSet<>();
+		for (AppResource appResource : target) {
+			targetKeys.add(appResource.getKey());
+			referenced.add(appResource.getFilename());
+			String indexedFilename = indexed.get(appResource.getKey());
+			if (appResource.getFilename().equals(indexedFilename) && present.test(appResource.getFilename())) {
+				plan.unchanged++;
+			}
+			else {
+				plan.toDownload.add(appResource);
+				if (indexedFilename != null && !appResource.getFilename().equals(indexedFilename)) {
+					replaced.add(indexedFilename);
+				}
+			}
+		}
+		indexed.forEach((key, filename) -> {
+			if (targetKeys.contains(key)) {
+				return;
+			}
+			if (inScope.test(key)) {
+				plan.unlisted.put(key, filename);
+			}
+			referenced.add(filename);
+		});
+		replaced.stream().filter(filename -> !referenced.contains(filename)).forEach(plan.replacedFilenames::add);
+		return plan;
+	}
+
+	/**
+	 * @return the entries that are new, changed version or missing from disk
+	 */
+	public List<AppResource> getToDownload() {
+		return Collections.unmodifiableList(toDownload);
+	}
+
+	/**
+	 * @return the file name of each indexed key in scope that the catalog does not list
+	 */
+	public Map<String, String> getUnlisted() {
+		return Collections.unmodifiableMap(unlisted);
+	}
+
+	/**
+	 * @return the file names that catalog keys point away from once their new versions are downloaded, and that no
+	 * other key refers to, which can be deleted
+	 */
+	public Set<String> getReplacedFilenames() {
+		return Collections.unmodifiableSet(replacedFilenames);
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	public String summary() {
+		return String.format("%d up to date, %d to download, %d not in the catalog", unchanged,
+			toDownload.size(), unlisted.size());
+	}
+}
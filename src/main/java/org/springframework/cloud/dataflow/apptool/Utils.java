@@ -18,6 +18,7 @@ package org.springframework.cloud.dataflow.apptool;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -40,8 +41,23 @@ public abstract class Utils {
 
 	public static Map<String, String> loadPropertiesFile(File propertiesFile) throws Exception {
 		Properties properties = new Properties();
-		properties.load(new FileInputStream(propertiesFile));
-		return new HashMap(properties);
+		try (InputStream in = new FileInputStream(propertiesFile)) {
+			properties.load(in);
+		}
+		Map<String, String> map = new HashMap<>();
+		properties.stringPropertyNames().forEach(key -> map.put(key, properties.getProperty(key)));
+		return map;
+	}
+
+	/**
+	 * @return the bytes, e.g. of a digest, as lower case hex digits
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
 	}
 
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.command;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.dataflow.apptool.CatalogDiff;
+import org.springframework.cloud.dataflow.apptool.CatalogRefresher;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import static org.springframework.cloud.dataflow.apptool.Utils.message;
+
+/**
+ * This class implements the 'catalog' shell commands for updating the app catalogs in the config directory.
+ **/
+@ShellComponent
+public class Catalogs {
+
+	private static final String CATALOG_REFRESH = "catalog refresh";
+
+	@Autowired
+	private CatalogRefresher catalogRefresher;
+
+	@Autowired
+	private Download download;
+
+	@ShellMethod(value = "Fetch the latest stream and task app catalogs and show what changed.",
+		key = CATALOG_REFRESH)
+	public void refresh(@ShellOption(value = "--download",
+		help = "download the added and changed apps for the current binder and task apps") boolean downloadChanges) {
+		List<CatalogRefresher.Result> results = catalogRefresher.refresh();
+		for (CatalogRefresher.Result result : results) {
+			if (result.getFailure() != null) {
+				message(String.format("%s: failed, %s", result.getName(), result.getFailure()));
+			}
+			else if (!result.isModified()) {
+				message(String.format("%s: not modified", result.getName()));
+			}
+			else {
+				CatalogDiff diff = result.getDiff();
+				message(String.format("%s: %s", result.getName(), diff.summary()));
+				diff.lines().forEach(line -> message("  " + line));
+			}
+		}
+		if (!downloadChanges) {
+			return;
+		}
+		for (CatalogRefresher.Result result : results) {
+			if (result.isModified() && !result.getDiff().getKeysToDownload().isEmpty()) {
+				message(String.format("%s: downloading changes", result.getName()));
+				download.downloadEntries(result.getName(), result.getDiff().getKeysToDownload());
+			}
+		}
+	}
+}
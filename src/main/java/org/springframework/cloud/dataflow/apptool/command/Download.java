@@ -16,19 +16,39 @@
 
 package org.springframework.cloud.dataflow.apptool.command;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.dataflow.apptool.AppInfo;
 import org.springframework.cloud.dataflow.apptool.AppResource;
 import org.springframework.cloud.dataflow.apptool.BinderResolver;
+import org.springframework.cloud.dataflow.apptool.CatalogCache;
 import org.springframework.cloud.dataflow.apptool.ComponentTypeValidator;
+import org.springframework.cloud.dataflow.apptool.FileLocks;
+import org.springframework.cloud.dataflow.apptool.SyncPlan;
+import org.springframework.cloud.dataflow.apptool.download.AppResourceDownloader;
+import org.springframework.cloud.dataflow.apptool.download.ArtifactStateStore;
+import org.springframework.cloud.dataflow.apptool.download.DownloadExecutor;
+import org.springframework.cloud.dataflow.apptool.download.DownloadMetrics;
+import org.springframework.cloud.dataflow.apptool.download.DownloadReport;
+import org.springframework.cloud.dataflow.apptool.download.DownloadResult;
+import org.springframework.cloud.dataflow.apptool.download.MirrorSelector;
+import org.springframework.cloud.dataflow.apptool.download.RateLimiter;
 import org.springframework.cloud.dataflow.apptool.event.BinderUpdateEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.shell.Availability;
@@ -40,7 +60,7 @@ import org.springframework.util.StringUtils;
 
 import static org.springframework.cloud.dataflow.apptool.AppResource.WILDCARD;
 import static org.springframework.cloud.dataflow.apptool.Utils.fatal;
-import static org.springframework.cloud.dataflow.apptool.Utils.loadPropertiesFile;
+import static org.springframework.cloud.dataflow.apptool.Utils.message;
 
 /**
  * This class implements the shell commands related to downloading artifacts listed the config properties files.
@@ -57,41 +77,88 @@ public class Download implements ApplicationListener<BinderUpdateEvent> {
 
 	private final static String CONFIG_DIR = "config";
 
-	@Value("${local.repo.directory}")
-	private String repoDirectory;
+	private final static String TASK_APPS = "task-apps";
+	private final static String STREAM_APPS = "%s-stream-apps";
+
+	private final static String METADATA = "metadata";
 
-	@Value("${maven.repo.url}")
 	private String mavenRepoUrl;
 
+	@Value("${download.max-concurrent:8}")
+	private int maxConcurrent;
+
+	@Value("${download.max-concurrent-per-host:4}")
+	private int maxConcurrentPerHost;
+
 	private Consumer<AppResource> appResourceConsumer;
 
+	private DownloadExecutor downloadExecutor;
+
 	@Value("${binder:}")
 
 	private String binder;
 
+	@Value("${local.repo.directory:}")
+	private String repoDirectory;
+
 	@Autowired
 	private AppInfo appInfo;
 
-	public Download() {
+	@Autowired
+	private ArtifactStateStore artifactStateStore;
+
+	@Autowired
+	private AppResourceDownloader appResourceDownloader;
+
+	@Autowired
+	private MirrorSelector mirrorSelector;
+
+	@Autowired
+	private RateLimiter rateLimiter;
+
+	@Autowired
+	private DownloadMetrics downloadMetrics;
+
+	private final CatalogCache catalogCache;
+
+	@Autowired
+	public Download(CatalogCache catalogCache) {
+		this.catalogCache = catalogCache;
 	}
 
-	public Download(Consumer<AppResource> appResourceConsumer) {
+	public Download(Consumer<AppResource> appResourceConsumer, CatalogCache catalogCache) {
 		this.appResourceConsumer = appResourceConsumer;
+		this.downloadExecutor = new DownloadExecutor(appResourceConsumer, 1, 1);
+		this.catalogCache = catalogCache;
 	}
 
 	@ShellMethod(value = "Download stream app jars from maven.", key = { GET_STREAM_APPS })
 	@ShellMethodAvailability("downloadStreamAvailability")
 	public void downloadStreamApps(@ShellOption(value = { "-n", "--name" }, defaultValue = WILDCARD) String name,
-		@ShellOption(value = { "-t", "--type" }, defaultValue = WILDCARD) String type) {
+		@ShellOption(value = { "-t", "--type" }, defaultValue = WILDCARD) String type,
+		@ShellOption(value = "--max-rate", help = "maximum combined download rate per second, e.g. 20MB",
+			defaultValue = ShellOption.NULL) String maxRate,
+		@ShellOption(value = "--sync", help = "only download new and changed versions and update the repository index")
+			boolean sync,
+		@ShellOption(value = "--prune", help = "with --sync, delete jars replaced by a new version") boolean prune) {
 
 		if (!ensureSupportedComponentType(type)) {
 			return;
 		}
+		if (prune && !sync) {
+			message("--prune requires --sync");
+			return;
+		}
 
 		try {
-			loadStreamApps().map(e -> new AppResource(e.getKey(), e.getValue(), mavenRepoUrl))
-				.filter(a -> a.matches(name, type))
-				.forEach(a -> appResourceConsumer.accept(a));
+			if (sync) {
+				List<AppResource> target = new ArrayList<>();
+				find(streamAppsCatalog(), name, type, target::add);
+				sync(target, name, type, maxRate, prune);
+			}
+			else {
+				download(consumer -> find(streamAppsCatalog(), name, type, consumer), binder, maxRate);
+			}
 		}
 		catch (Exception e) {
 			fatal(e.getMessage());
@@ -99,12 +166,12 @@ public class Download implements ApplicationListener<BinderUpdateEvent> {
 	}
 
 	@ShellMethod(value = "Download task app jars from maven or given URL.", key = { GET_TASK_APPS })
-	public void downloadTaskApps(@ShellOption(value = { "-n", "--name" }, defaultValue = WILDCARD) String name) {
+	public void downloadTaskApps(@ShellOption(value = { "-n", "--name" }, defaultValue = WILDCARD) String name,
+		@ShellOption(value = "--max-rate", help = "maximum combined download rate per second, e.g. 20MB",
+			defaultValue = ShellOption.NULL) String maxRate) {
 
 		try {
-			loadTaskApps().map(e -> new AppResource(e.getKey(), e.getValue(), mavenRepoUrl))
-				.filter(a -> a.matches(name, WILDCARD))
-				.forEach(a -> appResourceConsumer.accept(a));
+			download(consumer -> find(TASK_APPS, name, WILDCARD, consumer), null, maxRate);
 		}
 		catch (Exception e) {
 			fatal(e.getMessage());
@@ -115,11 +182,13 @@ public class Download implements ApplicationListener<BinderUpdateEvent> {
 	@ShellMethodAvailability("downloadStreamAvailability")
 	public void listStreamApps() {
 		try {
-			loadStreamApps().map(e -> new AppResource(e.getKey(), e.getValue(), mavenRepoUrl))
-				.filter(a -> !"metadata".equals(a.getClassifier()))
-				.map(a -> String.format("%s:%s", a.getComponentType(), a.getName()))
-				.sorted()
-				.forEach(System.out::println);
+			List<String> names = new ArrayList<>();
+			find(streamAppsCatalog(), WILDCARD, WILDCARD, a -> {
+				if (!METADATA.equals(a.getClassifier())) {
+					names.add(String.format("%s:%s", a.getComponentType(), a.getName()));
+				}
+			});
+			names.stream().sorted().forEach(System.out::println);
 		}
 		catch (Exception e) {
 			fatal(e.getMessage());
@@ -129,17 +198,48 @@ public class Download implements ApplicationListener<BinderUpdateEvent> {
 	@ShellMethod(value = "List task apps available for download.", key = LIST_TASK_APPS)
 	public void listTaskApps() {
 		try {
-			loadTaskApps().map(e -> new AppResource(e.getKey(), e.getValue(), mavenRepoUrl))
-				.filter(a -> !"metadata".equals(a.getClassifier()))
-				.map(a -> String.format("%s", a.getName()))
-				.sorted()
-				.forEach(System.out::println);
+			List<String> names = new ArrayList<>();
+			find(TASK_APPS, WILDCARD, WILDCARD, a -> {
+				if (!METADATA.equals(a.getClassifier())) {
+					names.add(a.getName());
+				}
+			});
+			names.stream().sorted().forEach(System.out::println);
 		}
 		catch (Exception e) {
 			fatal(e.getMessage());
 		}
 	}
 
+	/**
+	 * Download the entries of a catalog with the given keys, e.g. the apps a 'catalog refresh' added or changed.
+	 * Stream apps are only downloaded from the catalog of the current binder.
+	 * @param catalogName the catalog name, e.g. 'kafka-stream-apps'
+	 */
+	void downloadEntries(String catalogName, Collection<String> keys) {
+		String binderTag;
+		if (TASK_APPS.equals(catalogName)) {
+			binderTag = null;
+		}
+		else if (StringUtils.hasText(binder) && String.format(STREAM_APPS, binder).equals(catalogName)) {
+			binderTag = binder;
+		}
+		else {
+			message(String.format("skipping %s, which is not the catalog of the current binder", catalogName));
+			return;
+		}
+		try {
+			download(consumer -> find(catalogName, WILDCARD, WILDCARD, a -> {
+				if (keys.contains(a.getKey())) {
+					consumer.accept(a);
+				}
+			}), binderTag, null);
+		}
+		catch (UncheckedIOException e) {
+			fatal(e.getMessage());
+		}
+	}
+
 	public Availability downloadStreamAvailability() {
 		return StringUtils.isEmpty(binder) ?
 			Availability.unavailable("binder is not defined") :
@@ -153,13 +253,150 @@ public class Download implements ApplicationListener<BinderUpdateEvent> {
 		return ComponentTypeValidator.isValidStreamAppType(type);
 	}
 
-	private Stream<Map.Entry<String, String>> loadStreamApps() throws Exception {
-		return loadPropertiesFile(
-			Paths.get(CONFIG_DIR, String.format("%s-stream-apps.properties", binder)).toFile()).entrySet().stream();
+	/**
+	 * Bring the repository in line with the catalog entries with the least work: entries already indexed with the same
+	 * file name and present on disk are skipped without a request, the others are downloaded and their keys pointed
+	 * at the new file names. Jars replaced by a new version are reported, or deleted if {@code prune} is true. Indexed
+	 * apps matching the patterns that the catalog does not list, e.g. those added with 'repo add', are only reported.
+	 */
+	private void sync(List<AppResource> target, String name, String type, String maxRate, boolean prune) {
+		Path directory = Paths.get(repoDirectory);
+		SyncPlan plan = SyncPlan.compute(target, appInfo.findAllAsMap(),
+			filename -> Files.exists(directory.resolve(filename)),
+			key -> isStreamAppKey(key) && appInfo.matches(type, name, key));
+		message(plan.summary());
+		Set<String> superseded = new HashSet<>();
+		appInfo.begin();
+		try {
+			if (!plan.getToDownload().isEmpty()) {
+				DownloadReport report = download(plan.getToDownload()::forEach, binder, maxRate);
+				if (report == null) {
+					return;
+				}
+				superseded.addAll(appInfo.replaceAll(report.getResults().stream()
+					.filter(DownloadResult::isSuccessful)
+					.map(DownloadResult::getAppResource)
+					.collect(Collectors.toList())));
+			}
+			plan.getUnlisted().forEach((key, filename) -> message(String.format("%s=%s is not in the catalog, kept",
+				key, filename)));
+			superseded.retainAll(plan.getReplacedFilenames());
+			if (prune) {
+				prune(directory, superseded);
+			}
+			else if (!superseded.isEmpty()) {
+				message(String.format("kept %d replaced jars, use --prune to delete them", superseded.size()));
+			}
+		}
+		finally {
+			appInfo.commit();
+		}
+	}
+
+	private void prune(Path directory, Set<String> filenames) {
+		Set<String> removed = new HashSet<>();
+		for (String filename : filenames) {
+			try {
+				FileLocks.withLock(FileLocks.lockFile(repoDirectory, filename),
+					() -> Files.deleteIfExists(directory.resolve(filename)));
+				message(String.format("rm %s", filename));
+				removed.add(filename);
+				artifactStateStore.remove(filename);
+			}
+			catch (IOException e) {
+				message(e.getMessage());
+			}
+		}
+		appInfo.removeAll(removed);
+		artifactStateStore.flush();
+	}
+
+	private boolean isStreamAppKey(String key) {
+		int separator = key.indexOf('.');
+		return separator > 0 && ComponentTypeValidator.isStreamAppType(key.substring(0, separator));
+	}
+
+	/**
+	 * @param entries   hands the resources to download to the download executor
+	 * @param binderTag the binder to tag download metrics with, null for task apps
+	 * @param maxRate   limits the combined rate of this command's transfers if not null, within 'download.max-rate'
+	 * @return the report, or null if nothing was downloaded because {@code maxRate} is invalid
+	 */
+	private DownloadReport download(Entries entries, String binderTag, String maxRate) {
+		Consumer<AppResource> transfer;
+		try {
+			transfer = transfer(maxRate);
+		}
+		catch (IllegalArgumentException e) {
+			message(e.getMessage());
+			return null;
+		}
+		if (downloadMetrics != null) {
+			downloadMetrics.setBinder(binderTag);
+		}
+		if (appInfo != null) {
+			appInfo.begin();
+		}
+		DownloadReport report;
+		try {
+			try {
+				entries.forEach(appResource -> downloadExecutor.submit(appResource, transfer));
+			}
+			catch (IOException e) {
+				message(e.getMessage());
+			}
+			report = downloadExecutor.awaitCompletion();
+		}
+		finally {
+			if (appInfo != null) {
+				appInfo.commit();
+			}
+		}
+		if (artifactStateStore != null) {
+			artifactStateStore.flush();
+		}
+		report.getFailures().forEach(r -> message(String.format("failed to download %s: %s",
+			r.getAppResource().getUrl(), r.getFailure().getMessage())));
+		message(report.summary());
+		exportMetrics();
+		return report;
+	}
+
+	/**
+	 * @return the consumer performing this command's transfers. With {@code maxRate}, it takes tokens from a rate
+	 * limiter of its own as well as the shared one, so other commands' transfers keep the configured rate.
+	 * @throws IllegalArgumentException if {@code maxRate} is invalid
+	 */
+	private Consumer<AppResource> transfer(String maxRate) {
+		if (maxRate == null || appResourceDownloader == null) {
+			return appResourceConsumer;
+		}
+		return appResourceDownloader.withRateLimiter(new RateLimiter(RateLimiter.parseRate(maxRate), rateLimiter));
 	}
 
-	private Stream<Map.Entry<String, String>> loadTaskApps() throws Exception {
-		return loadPropertiesFile(Paths.get(CONFIG_DIR, "task-apps.properties").toFile()).entrySet().stream();
+	private void exportMetrics() {
+		if (downloadMetrics == null) {
+			return;
+		}
+		try {
+			downloadMetrics.export();
+		}
+		catch (IOException e) {
+			message(String.format("failed to export download metrics: %s", e.getMessage()));
+		}
+	}
+
+	private String streamAppsCatalog() {
+		return String.format(STREAM_APPS, binder);
+	}
+
+	/**
+	 * Hand the entries of the catalog matching the name and type patterns to the consumer. Large catalogs are read
+	 * a line at a time, so only the matching entries are held in memory.
+	 */
+	private void find(String catalogName, String name, String type, Consumer<AppResource> consumer)
+		throws IOException {
+		catalogCache.find(Paths.get(CONFIG_DIR, catalogName + ".properties"), mavenRepoUrl, name, type, consumer);
 	}
 
 	@Override
@@ -169,7 +406,10 @@ public class Download implements ApplicationListener<BinderUpdateEvent> {
 
 	@PostConstruct
 	public void init() {
-		this.appResourceConsumer = new AppResourceDownloader(repoDirectory, appInfo);
+		this.appResourceConsumer = appResourceDownloader;
+		this.mavenRepoUrl = mirrorSelector.getPrimary();
+		this.downloadExecutor = new DownloadExecutor(appResourceConsumer, maxConcurrent, maxConcurrentPerHost,
+			mirrorSelector::hostOf);
 		if (StringUtils.hasText(this.binder)) {
 			this.binder = BinderResolver.resolveBinder(binder);
 			if (!StringUtils.hasText(binder)) {
@@ -178,4 +418,17 @@ public class Download implements ApplicationListener<BinderUpdateEvent> {
 		}
 	}
 
+	@PreDestroy
+	public void destroy() {
+		downloadExecutor.shutdown();
+	}
+
+	/**
+	 * The catalog entries for a download, handed over one at a time.
+	 */
+	@FunctionalInterface
+	private interface Entries {
+
+		void forEach(Consumer<AppResource> consumer) throws IOException;
+	}
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.command;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.dataflow.apptool.download.DownloadMetrics;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import static org.springframework.cloud.dataflow.apptool.Utils.message;
+
+/**
+ * This class implements the 'metrics' shell command for inspecting download metrics.
+ **/
+@ShellComponent
+public class Metrics {
+
+	@Autowired
+	private DownloadMetrics downloadMetrics;
+
+	@ShellMethod(value = "Show download metrics in the Prometheus text format.", key = "metrics")
+	public void metrics(@ShellOption(value = { "-f", "--file" }, defaultValue = ShellOption.NULL,
+		help = "write the metrics to this file instead") String file) {
+		if (file == null) {
+			message(downloadMetrics.scrape());
+			return;
+		}
+		try {
+			downloadMetrics.export(Paths.get(file));
+		}
+		catch (IOException e) {
+			message(String.format("failed to export download metrics: %s", e.getMessage()));
+		}
+	}
+}
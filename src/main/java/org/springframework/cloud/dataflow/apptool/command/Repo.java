@@ -26,8 +26,14 @@ import org.springframework.cloud.dataflow.apptool.AppInfo;
 import org.springframework.cloud.dataflow.apptool.AppResource;
 import org.springframework.cloud.dataflow.apptool.ComponentTypeValidator;
 import org.springframework.cloud.dataflow.apptool.CustomAppResource;
+import org.springframework.cloud.dataflow.apptool.FileLocks;
 import org.springframework.cloud.dataflow.apptool.Utils;
-import org.springframework.core.io.UrlResource;
+import org.springframework.cloud.dataflow.apptool.download.AppResourceDownloader;
+import org.springframework.cloud.dataflow.apptool.download.ArtifactStateStore;
+import org.springframework.cloud.dataflow.apptool.download.DownloadMetrics;
+import org.springframework.cloud.dataflow.apptool.download.TransferClient;
+import org.springframework.cloud.dataflow.apptool.fsck.RepositoryChecker;
+import org.springframework.cloud.dataflow.apptool.fsck.RepositoryReport;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
@@ -35,12 +41,13 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-
-import javax.annotation.PostConstruct;
+import java.util.stream.Stream;
 
 /**
  * @author David Turanski
@@ -55,34 +62,54 @@ public class Repo {
 	private static final String REPO_RM = "repo rm";
 	private static final String REPO_ADD = "repo add";
 	private static final String REPO_CLEAN = "repo clean";
+	private static final String REPO_FSCK = "repo fsck";
 
 	@Autowired
 	private AppInfo appInfo;
 
+	@Autowired
+	private ArtifactStateStore artifactStateStore;
+
 	@Value("${local.repo.directory}")
 	private String repoDirectory;
 
+	@Autowired
 	private AppResourceDownloader appResourceDownloader;
 
+	@Autowired
+	private TransferClient transferClient;
+
+	@Autowired
+	private DownloadMetrics downloadMetrics;
+
+	@Autowired
+	private RepositoryChecker repositoryChecker;
+
 	@ShellMethod(value = "List local repository.", key = { REPO_LIST, REPO_LS })
 	public void list() {
-		appInfo.findAll().forEach(Utils::message);
+		try {
+			appInfo.findAll().forEach(Utils::message);
+		}
+		catch (UncheckedIOException e) {
+			fatal(e.getMessage());
+		}
 	}
 
 	@ShellMethod(value = "Clean local repository.", key = REPO_CLEAN)
 	public void clean() {
-		try {
-			Files.list(Paths.get(repoDirectory)).filter(Files::isRegularFile).forEach(path -> {
+		try (Stream<Path> files = Files.list(Paths.get(repoDirectory))) {
+			files.filter(Files::isRegularFile).forEach(path -> {
 				try {
-					Files.delete(path);
+					delete(path);
 				}
 				catch (IOException e) {
 					message(e.getMessage());
 				}
 			});
 			appInfo.clean();
+			artifactStateStore.clean();
 		}
-		catch (IOException e) {
+		catch (IOException | UncheckedIOException e) {
 			fatal(e.getMessage());
 		}
 	}
@@ -94,7 +121,15 @@ public class Repo {
 		if (!ensureSupportedAppType(type)) {
 			return;
 		}
+		try {
+			remove(name, type);
+		}
+		catch (UncheckedIOException e) {
+			fatal(e.getMessage());
+		}
+	}
 
+	private void remove(String name, String type) {
 		List<String> entries = appInfo.findByNameAndType(name, type);
 
 		if (CollectionUtils.isEmpty(entries)) {
@@ -102,17 +137,32 @@ public class Repo {
 			return;
 		}
 
+		List<String> removed = new ArrayList<>();
 		entries.forEach(f -> {
 			try {
 				Path path = Paths.get(repoDirectory, f);
 				message(String.format("rm %s", path.getFileName()));
-				Files.delete(path);
-				appInfo.remove(path.getFileName().toString());
+				delete(path);
+				removed.add(path.getFileName().toString());
+				artifactStateStore.remove(path.getFileName().toString());
 			}
 			catch (IOException e) {
 				message(e.getMessage());
 			}
 		});
+		appInfo.removeAll(removed);
+		artifactStateStore.flush();
+	}
+
+	/**
+	 * Delete a file in the repository directory holding its lock, so a concurrent download or fsck of the artifact
+	 * never sees it half gone.
+	 */
+	private void delete(Path path) throws IOException {
+		FileLocks.withLock(FileLocks.lockFile(repoDirectory, path.getFileName().toString()), () -> {
+			Files.delete(path);
+			return null;
+		});
 	}
 
 	@ShellMethod(value = "Add to local repository from a URL.", key = REPO_ADD)
@@ -130,16 +180,60 @@ public class Repo {
 			resource.setMetadataUrl(metadataUrl);
 		}
 
-		appResourceDownloader.accept(resource);
-		AppResource metadataResource = resource.getMetadataResource();
-		if (metadataResource != null) {
-			appResourceDownloader.accept(metadataResource);
+		downloadMetrics.setBinder(null);
+		appInfo.begin();
+		try {
+			appResourceDownloader.accept(resource);
+			AppResource metadataResource = resource.getMetadataResource(transferClient::exists);
+			if (metadataResource != null) {
+				appResourceDownloader.accept(metadataResource);
+			}
+		}
+		catch (UncheckedIOException e) {
+			message(e.getMessage());
+		}
+		finally {
+			commit();
+		}
+		artifactStateStore.flush();
+		try {
+			downloadMetrics.export();
+		}
+		catch (IOException e) {
+			message(String.format("failed to export download metrics: %s", e.getMessage()));
 		}
 	}
 
-	@PostConstruct
-	public void init() {
-		this.appResourceDownloader = new AppResourceDownloader(repoDirectory, appInfo);
+	@ShellMethod(value = "Check the local repository index against the jars on disk and repair it.", key = REPO_FSCK)
+	public void fsck(@ShellOption(value = { "--dry-run" }, help = "only report, do not repair") boolean dryRun) {
+		RepositoryReport report;
+		try {
+			report = repositoryChecker.check(!dryRun);
+		}
+		catch (IOException | UncheckedIOException e) {
+			message(String.format("fsck failed: %s", e.getMessage()));
+			return;
+		}
+		String removed = dryRun ? "" : ", removed";
+		report.getMissing().forEach(filename -> message(String.format("missing %s%s", filename, removed)));
+		report.getCorrupt().forEach((filename, reason) -> message(String.format("corrupt %s: %s%s", filename, reason,
+			dryRun ? "" : report.getChanged().contains(filename) ? ", changed since it was checked, kept" :
+				", deleted")));
+		report.getUnindexed().forEach((key, filename) -> message(String.format("unindexed %s=%s%s", key, filename,
+			dryRun ? "" : ", added")));
+		report.getUnresolved().forEach((filename, reason) -> message(String.format("cannot index %s: %s", filename,
+			reason)));
+		report.getPartial().forEach(filename -> message(String.format("partial download %s", filename)));
+		message(report.summary());
+	}
+
+	private void commit() {
+		try {
+			appInfo.commit();
+		}
+		catch (UncheckedIOException e) {
+			fatal(e.getMessage());
+		}
 	}
 
 	private boolean ensureSupportedAppType(String type) {
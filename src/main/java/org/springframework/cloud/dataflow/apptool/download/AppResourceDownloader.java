@@ -0,0 +1,747 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.springframework.cloud.dataflow.apptool.AppInfo;
+import org.springframework.cloud.dataflow.apptool.AppResource;
+import org.springframework.cloud.dataflow.apptool.FileLocks;
+import org.springframework.cloud.dataflow.apptool.download.TransferClient.Response;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import static org.springframework.cloud.dataflow.apptool.Utils.fatal;
+import static org.springframework.cloud.dataflow.apptool.Utils.toHex;
+
+/**
+ * Downloads a single {@link AppResource} into the local repository directory and records it in {@link AppInfo}.
+ * Failures are rethrown as {@link UncheckedIOException} so callers, such as {@link DownloadExecutor}, can collect them.
+ * <p>
+ * Bytes are staged in a '.part' file which is renamed to the artifact file name only once the transfer is complete, so
+ * an interrupted download never leaves a truncated jar in the repository. The 'ETag', or else the 'Last-Modified'
+ * date, of the response is kept next to it in a '.part.validator' file. If a '.part' file is left over from a previous
+ * attempt, the transfer is resumed with an HTTP Range request carrying that validator in 'If-Range', so a server whose
+ * artifact has changed meanwhile sends the whole new version instead, and the transfer starts over. A '.part' file
+ * without a validator is never resumed.
+ * <p>
+ * If the artifact is already present and conditional downloads are enabled, the validators recorded in the
+ * {@link ArtifactStateStore} are sent as 'If-None-Match' and 'If-Modified-Since' so an unchanged artifact costs a
+ * single 304 response. Without recorded validators, the size and modification time reported by the server are
+ * compared with the local file instead, or, if the server reports no modification time, the published checksum.
+ * <p>
+ * The SHA-1 digest, and optionally the SHA-256 digest, of the content is computed while it is copied and recorded
+ * with the validators. For maven artifacts, the digest is verified against the '.sha1' (or '.md5') checksum file
+ * published next to the artifact before the '.part' file is moved into place.
+ * <p>
+ * Artifacts above a configurable size are fetched as several byte ranges in parallel, written at their offsets into a
+ * preallocated '.part' file, if the server advertises 'Accept-Ranges: bytes'. Otherwise a single stream is used.
+ * <p>
+ * Each artifact is downloaded holding a {@link FileLocks file lock} named after it, so processes sharing the
+ * repository never write the same '.part' file at once. A process that waited for the lock finds the artifact already
+ * present and only checks that it is up to date.
+ */
+public class AppResourceDownloader implements Consumer<AppResource> {
+
+	static final String PART_SUFFIX = ".part";
+
+	static final String VALIDATOR_SUFFIX = ".validator";
+
+	private static final long UP_TO_DATE = -1L;
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private static final String SHA_1 = "SHA-1";
+
+	private static final String SHA_256 = "SHA-256";
+
+	private static final String MD5 = "MD5";
+
+	private static final Map<String, String> CHECKSUM_EXTENSIONS = new HashMap<>();
+
+	static {
+		CHECKSUM_EXTENSIONS.put(SHA_1, ".sha1");
+		CHECKSUM_EXTENSIONS.put(MD5, ".md5");
+	}
+
+	private final String directory;
+
+	private final AppInfo appInfo;
+
+	private final ArtifactStateStore artifactStateStore;
+
+	private final TransferClient transferClient;
+
+	private final MirrorSelector mirrorSelector;
+
+	private final ExecutorService rangeExecutor;
+
+	private boolean conditional = true;
+
+	private boolean sha256 = false;
+
+	private RateLimiter rateLimiter = new RateLimiter(0L);
+
+	private DownloadMetrics metrics = new DownloadMetrics();
+
+	private int parallelRanges = 1;
+
+	private long parallelRangesThreshold = Long.MAX_VALUE;
+
+	public AppResourceDownloader(String directory, AppInfo appInfo, ArtifactStateStore artifactStateStore,
+		TransferClient transferClient, MirrorSelector mirrorSelector) {
+		ensureWritableDirectory(directory);
+		this.directory = directory;
+		this.appInfo = appInfo;
+		this.artifactStateStore = artifactStateStore;
+		this.transferClient = transferClient;
+		this.mirrorSelector = mirrorSelector;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("download-range-");
+		threadFactory.setDaemon(true);
+		this.rangeExecutor = Executors.newCachedThreadPool(threadFactory);
+	}
+
+	/**
+	 * @param conditional true to skip artifacts that are already present and unchanged at the source
+	 */
+	public void setConditional(boolean conditional) {
+		this.conditional = conditional;
+	}
+
+	/**
+	 * @param sha256 true to also compute and record the SHA-256 digest of each artifact
+	 */
+	public void setSha256(boolean sha256) {
+		this.sha256 = sha256;
+	}
+
+	/**
+	 * @param rateLimiter limits the combined transfer rate of all downloads
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	public void setMetrics(DownloadMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Fetch artifacts of at least {@code threshold} bytes as {@code ranges} byte ranges in parallel, if the server
+	 * accepts range requests.
+	 * @param ranges    the number of ranges to split an artifact into, 1 to always use a single stream
+	 * @param threshold the minimum artifact size in bytes
+	 */
+	public void setParallelRanges(int ranges, long threshold) {
+		Assert.isTrue(ranges > 0, "ranges must be greater than 0");
+		this.parallelRanges = ranges;
+		this.parallelRangesThreshold = threshold;
+	}
+
+	@Override
+	public void accept(AppResource appResource) {
+		accept(appResource, rateLimiter);
+	}
+
+	/**
+	 * @param limiter limits the transfers of a single command, e.g. one created with the {@link #setRateLimiter
+	 *                shared rate limiter} as its parent
+	 * @return a consumer downloading like this one, but paying for the bytes it reads with tokens from
+	 * {@code limiter} instead of the shared rate limiter
+	 */
+	public Consumer<AppResource> withRateLimiter(RateLimiter limiter) {
+		return appResource -> accept(appResource, limiter);
+	}
+
+	private void accept(AppResource appResource, RateLimiter limiter) {
+		try {
+			if (!downloadAppResource(appResource, limiter)) {
+				System.out.println(String.format("%s is up to date", appResource.getFilename()));
+			}
+			appInfo.add(appResource);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(String.format("%s: %s", appResource.getFilename(), e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * Try each {@link MirrorSelector#candidates(AppResource) candidate} URL for the resource in turn, failing over to
+	 * the next mirror on error.
+	 * @return false if the artifact was already present and unchanged
+	 */
+	private boolean downloadAppResource(AppResource appResource, RateLimiter limiter) throws IOException {
+		return FileLocks.withLock(FileLocks.lockFile(directory, appResource.getFilename()),
+			() -> downloadFromMirrors(appResource, limiter));
+	}
+
+	private boolean downloadFromMirrors(AppResource appResource, RateLimiter limiter) throws IOException {
+		long started = System.nanoTime();
+		int attempts = 0;
+		IOException failure = null;
+		for (URL url : mirrorSelector.candidates(appResource)) {
+			long start = System.currentTimeMillis();
+			attempts++;
+			try {
+				long transferred = downloadAppResource(appResource, url, limiter);
+				mirrorSelector.succeeded(url, transferred, System.currentTimeMillis() - start);
+				if (transferred == UP_TO_DATE) {
+					metrics.upToDate(appResource, System.nanoTime() - started, attempts - 1);
+					return false;
+				}
+				metrics.completed(appResource, transferred, System.nanoTime() - started, attempts - 1);
+				return true;
+			}
+			catch (IOException e) {
+				mirrorSelector.failed(url, e);
+				failure = e;
+			}
+		}
+		metrics.failed(appResource, failure, System.nanoTime() - started, attempts - 1);
+		throw failure;
+	}
+
+	/**
+	 * @return the number of bytes transferred, or {@link #UP_TO_DATE} if the artifact was already present and
+	 * unchanged
+	 */
+	private long downloadAppResource(AppResource appResource, URL url, RateLimiter limiter) throws IOException {
+		Path target = Paths.get(directory, appResource.getFilename());
+		Path part = Paths.get(directory, appResource.getFilename() + PART_SUFFIX);
+
+		ArtifactState validators = null;
+		if (conditional && Files.exists(target)) {
+			validators = artifactStateStore.get(appResource.getFilename());
+			if (validators == null || !isHttp(url) || validators.getContentLength() != Files.size(target)) {
+				ArtifactState current = probe(appResource, url, target, validators);
+				if (current != null) {
+					artifactStateStore.put(appResource.getFilename(), current);
+					return UP_TO_DATE;
+				}
+				validators = null;
+			}
+		}
+
+		Path partValidator = Paths.get(directory, appResource.getFilename() + PART_SUFFIX + VALIDATOR_SUFFIX);
+		String ifRange = validators == null && Files.exists(part) ? readValidator(partValidator) : null;
+		long offset = ifRange != null ? Files.size(part) : 0L;
+		long requested = System.nanoTime();
+		Response response = open(url, offset, ifRange, validators);
+		if (response == null) {
+			return UP_TO_DATE;
+		}
+
+		Map<String, MessageDigest> digests;
+		Checksum expected;
+		long transferred;
+		try {
+			InputStream body = timingFirstByte(response, appResource, requested);
+			if (offset > 0 && response.getStatus() != 206) {
+				// changed at the source, or the range is not supported, so start over
+				offset = 0L;
+			}
+			if (offset == 0) {
+				Files.deleteIfExists(partValidator);
+			}
+
+			System.out.println(String.format("downloading %s...", url));
+			expected = appResource.isMavenArtifact() ? fetchChecksum(url) : null;
+			digests = createDigests(expected);
+
+			long contentLength = response.getContentLength();
+			if (offset == 0 && splittable(response, contentLength)) {
+				// not resumable, since an interrupted parallel transfer leaves holes in the '.part' file
+				transferred = copyRanges(url, response, body, part, contentLength, digests.values(), limiter);
+			}
+			else {
+				if (offset == 0) {
+					writeValidator(partValidator, response);
+				}
+				try (InputStream in = digesting(body, digests.values());
+					 FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						 StandardOpenOption.READ)) {
+					out.truncate(offset);
+					if (offset > 0) {
+						updateDigests(out, offset, digests.values());
+					}
+					transferred = copy(Channels.newChannel(in), out, offset, Long.MAX_VALUE, limiter);
+					if (contentLength >= 0 && transferred < contentLength) {
+						throw new IOException(String.format("transfer incomplete, received %d of %d bytes",
+							transferred, contentLength));
+					}
+				}
+			}
+		}
+		finally {
+			response.close();
+		}
+
+		Map<String, String> actual = new HashMap<>();
+		digests.forEach((algorithm, digest) -> actual.put(algorithm, toHex(digest.digest())));
+		if (expected != null && !expected.value.equals(actual.get(expected.algorithm))) {
+			Files.delete(part);
+			Files.deleteIfExists(partValidator);
+			throw new IOException(String.format("%s checksum mismatch, expected %s but was %s", expected.algorithm,
+				expected.value, actual.get(expected.algorithm)));
+		}
+
+		moveIntoPlace(part, target);
+		Files.deleteIfExists(partValidator);
+		artifactStateStore.put(appResource.getFilename(),
+			stateOf(response, Files.size(target), actual.get(SHA_1), actual.get(SHA_256)));
+		return transferred;
+	}
+
+	/**
+	 * Request the resource, asking only for the bytes after {@code offset} if it is greater than 0, provided it still
+	 * matches {@code ifRange}. If the server cannot satisfy the range, the stale '.part' is discarded and the full
+	 * resource is requested.
+	 * @return the response, or null if {@code validators} were given and the server reports the resource unchanged
+	 */
+	private Response open(URL url, long offset, String ifRange, ArtifactState validators) throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		if (offset > 0) {
+			headers.put("Range", String.format("bytes=%d-", offset));
+			headers.put("If-Range", ifRange);
+		}
+		if (validators != null) {
+			if (StringUtils.hasText(validators.getEtag())) {
+				headers.put("If-None-Match", validators.getEtag());
+			}
+			if (StringUtils.hasText(validators.getLastModified())) {
+				headers.put("If-Modified-Since", validators.getLastModified());
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		Response response = transferClient.get(url, headers);
+		mirrorSelector.responded(url, System.currentTimeMillis() - start);
+		int status = response.getStatus();
+		if (status == 304 && validators != null) {
+			response.close();
+			return null;
+		}
+		if (offset > 0 && (status == 416 || (status == 206 && !rangeStartsAt(response, offset)))) {
+			response.close();
+			return open(url, 0L, null, null);
+		}
+		if (status >= 400) {
+			response.close();
+			throw new HttpStatusException(status, response.getReason());
+		}
+		return response;
+	}
+
+	/**
+	 * Keep the validator of a response that is about to be written to a new '.part' file, preferring a strong ETag,
+	 * as a weak one cannot be used in 'If-Range'.
+	 */
+	private void writeValidator(Path partValidator, Response response) throws IOException {
+		String etag = response.getHeader("ETag");
+		String validator = StringUtils.hasText(etag) && !etag.startsWith("W/") ? etag :
+			response.getHeader("Last-Modified");
+		if (StringUtils.hasText(validator)) {
+			Files.write(partValidator, validator.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * @return the validator of the response a '.part' file was written from, or null if there is none
+	 */
+	private String readValidator(Path partValidator) throws IOException {
+		if (!Files.exists(partValidator)) {
+			return null;
+		}
+		String validator = new String(Files.readAllBytes(partValidator), StandardCharsets.UTF_8).trim();
+		return validator.isEmpty() ? null : validator;
+	}
+
+	/**
+	 * Compare the size and modification time reported by the source with the local file, without transferring the
+	 * content. Digests already recorded for a local file of the same size are retained. If the source reports no
+	 * modification time, a matching size says nothing about the content, so the local file is compared with the
+	 * checksum published next to a maven artifact instead; without one, the artifact is treated as changed.
+	 * @return the current validators if the local file matches the source, otherwise null
+	 */
+	private ArtifactState probe(AppResource appResource, URL url, Path target, ArtifactState recorded)
+		throws IOException {
+		long start = System.currentTimeMillis();
+		try (Response response = transferClient.head(url)) {
+			mirrorSelector.responded(url, System.currentTimeMillis() - start);
+			long contentLength = response.getContentLength();
+			if (response.getStatus() != 200 || contentLength != Files.size(target)) {
+				return null;
+			}
+			long lastModified = response.getLastModified();
+			if (lastModified == 0) {
+				Checksum published = appResource.isMavenArtifact() ? fetchChecksum(url) : null;
+				Map<String, String> actual = published == null ? null : digest(target, published);
+				if (actual == null || !published.value.equals(actual.get(published.algorithm))) {
+					return null;
+				}
+				return stateOf(response, contentLength, actual.get(SHA_1), actual.get(SHA_256));
+			}
+			if (lastModified > Files.getLastModifiedTime(target).toMillis()) {
+				return null;
+			}
+			boolean sameContent = recorded != null && recorded.getContentLength() == contentLength;
+			return stateOf(response, contentLength, sameContent ? recorded.getSha1() : null,
+				sameContent ? recorded.getSha256() : null);
+		}
+	}
+
+	/**
+	 * @return the digests of a local file by algorithm, including the algorithm of {@code expected}
+	 */
+	private Map<String, String> digest(Path file, Checksum expected) throws IOException {
+		Map<String, MessageDigest> digests = createDigests(expected);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			updateDigests(channel, channel.size(), digests.values());
+		}
+		Map<String, String> actual = new HashMap<>();
+		digests.forEach((algorithm, digest) -> actual.put(algorithm, toHex(digest.digest())));
+		return actual;
+	}
+
+	private ArtifactState stateOf(Response response, long contentLength, String sha1, String sha256) {
+		return new ArtifactState(response.getHeader("ETag"), response.getHeader("Last-Modified"), contentLength, sha1,
+			sha256);
+	}
+
+	/**
+	 * Fetch the checksum published next to a maven artifact, preferring SHA-1 over MD5.
+	 * @return the checksum, or null if the repository does not provide one
+	 */
+	private Checksum fetchChecksum(URL url) throws IOException {
+		for (String algorithm : new String[] { SHA_1, MD5 }) {
+			URL checksumUrl = new URL(url.toString() + CHECKSUM_EXTENSIONS.get(algorithm));
+			try (Response response = transferClient.get(checksumUrl)) {
+				if (response.getStatus() != 200) {
+					continue;
+				}
+				String[] tokens = StreamUtils.copyToString(response.getBody(), StandardCharsets.US_ASCII).trim()
+					.split("\\s+");
+				if (StringUtils.hasText(tokens[0])) {
+					return new Checksum(algorithm, tokens[0].toLowerCase());
+				}
+			}
+		}
+		return null;
+	}
+
+	private Map<String, MessageDigest> createDigests(Checksum expected) {
+		Map<String, MessageDigest> digests = new LinkedHashMap<>();
+		try {
+			digests.put(SHA_1, MessageDigest.getInstance(SHA_1));
+			if (sha256) {
+				digests.put(SHA_256, MessageDigest.getInstance(SHA_256));
+			}
+			if (expected != null && !digests.containsKey(expected.algorithm)) {
+				digests.put(expected.algorithm, MessageDigest.getInstance(expected.algorithm));
+			}
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		return digests;
+	}
+
+	/**
+	 * @return the body of the response, which records the time to first byte when the first byte of a 200 or 206
+	 * response is read; a 304 carries no content, so its latency would only skew the measure
+	 */
+	private InputStream timingFirstByte(Response response, AppResource appResource, long requested)
+		throws IOException {
+		InputStream body = response.getBody();
+		if (response.getStatus() != 200 && response.getStatus() != 206) {
+			return body;
+		}
+		return new FilterInputStream(body) {
+
+			private boolean timed;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					received();
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					received();
+				}
+				return read;
+			}
+
+			private void received() {
+				if (!timed) {
+					timed = true;
+					metrics.timeToFirstByte(appResource, System.nanoTime() - requested);
+				}
+			}
+		};
+	}
+
+	private InputStream digesting(InputStream in, Collection<MessageDigest> digests) {
+		for (MessageDigest digest : digests) {
+			in = new DigestInputStream(in, digest);
+		}
+		return in;
+	}
+
+	/**
+	 * @return true if parallel ranges are enabled, the artifact is at least the threshold size and the server sent the
+	 * whole of it and accepts byte ranges
+	 */
+	private boolean splittable(Response response, long contentLength) {
+		return parallelRanges > 1 && contentLength >= parallelRangesThreshold && response.getStatus() == 200
+			&& "bytes".equalsIgnoreCase(response.getHeader("Accept-Ranges"));
+	}
+
+	/**
+	 * Split the artifact into byte ranges written in parallel into a preallocated '.part' file. The first range is
+	 * read from {@code body}, the content of the response already open, which is abandoned once it has been received;
+	 * the others are requested with 'If-Range' so that they fail rather than mix in a different version of the
+	 * artifact. The digests are computed from the completed file. On failure the '.part' is discarded, since it has
+	 * holes.
+	 * @return the number of bytes transferred
+	 */
+	private long copyRanges(URL url, Response response, InputStream body, Path part, long contentLength,
+		Collection<MessageDigest> digests, RateLimiter limiter) throws IOException {
+		long rangeSize = (contentLength + parallelRanges - 1) / parallelRanges;
+		String etag = response.getHeader("ETag");
+		try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+			out.write(ByteBuffer.allocate(1), contentLength - 1);
+
+			List<CompletableFuture<Void>> ranges = new ArrayList<>();
+			for (long start = rangeSize; start < contentLength; start += rangeSize) {
+				long first = start;
+				long last = Math.min(contentLength, start + rangeSize) - 1;
+				ranges.add(CompletableFuture.runAsync(() -> {
+					try {
+						copyRange(url, etag, out, first, last, limiter);
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, rangeExecutor));
+			}
+
+			IOException failure = null;
+			try {
+				long transferred = copy(Channels.newChannel(body), out, 0L, rangeSize, limiter);
+				if (transferred < rangeSize) {
+					failure = new IOException(String.format("transfer incomplete, received %d of %d bytes",
+						transferred, rangeSize));
+				}
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+			// wait for every range, so none is still writing once the channel is closed
+			for (CompletableFuture<Void> range : ranges) {
+				try {
+					range.join();
+				}
+				catch (CompletionException e) {
+					if (failure == null) {
+						failure = e.getCause() instanceof UncheckedIOException ?
+							((UncheckedIOException) e.getCause()).getCause() :
+							new IOException(e.getCause().getMessage(), e.getCause());
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			updateDigests(out, contentLength, digests);
+		}
+		catch (IOException e) {
+			Files.deleteIfExists(part);
+			throw e;
+		}
+		return contentLength;
+	}
+
+	private void copyRange(URL url, String etag, FileChannel out, long first, long last, RateLimiter limiter)
+		throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		headers.put("Range", String.format("bytes=%d-%d", first, last));
+		if (StringUtils.hasText(etag)) {
+			headers.put("If-Range", etag);
+		}
+		try (Response response = transferClient.get(url, headers)) {
+			if (response.getStatus() != 206 || !rangeStartsAt(response, first)) {
+				throw new IOException(String.format("range request for bytes %d-%d returned HTTP %d", first, last,
+					response.getStatus()));
+			}
+			long length = last - first + 1;
+			long transferred = copy(Channels.newChannel(response.getBody()), out, first, length, limiter);
+			if (transferred < length) {
+				throw new IOException(String.format("transfer incomplete, received %d of %d bytes in range %d-%d",
+					transferred, length, first, last));
+			}
+		}
+	}
+
+	/**
+	 * Copy up to {@code limit} bytes of the body into {@code out} starting at {@code position}, a chunk at a time so
+	 * each chunk can be paid for with tokens from the {@link RateLimiter}.
+	 * @return the number of bytes copied
+	 */
+	private long copy(ReadableByteChannel in, FileChannel out, long position, long limit, RateLimiter limiter)
+		throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long transferred = 0L;
+		while (transferred < limit) {
+			buffer.limit((int) Math.min(buffer.capacity(), limit - transferred));
+			int read = in.read(buffer);
+			if (read < 0) {
+				break;
+			}
+			if (read == 0) {
+				continue;
+			}
+			limiter.acquire(read);
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				transferred += out.write(buffer, position + transferred);
+			}
+			buffer.clear();
+		}
+		return transferred;
+	}
+
+	/**
+	 * Feed the first {@code length} bytes of a file, e.g. a resumed '.part' file, to the digests.
+	 */
+	private void updateDigests(FileChannel channel, long length, Collection<MessageDigest> digests)
+		throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long position = 0;
+		while (position < length) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), length - position));
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			for (MessageDigest digest : digests) {
+				digest.update(buffer.array(), 0, read);
+			}
+			position += read;
+		}
+	}
+
+	private boolean isHttp(URL url) {
+		String protocol = url.getProtocol();
+		return "http".equals(protocol) || "https".equals(protocol);
+	}
+
+	private boolean rangeStartsAt(Response response, long offset) {
+		String contentRange = response.getHeader("Content-Range");
+		return contentRange != null && contentRange.startsWith(String.format("bytes %d-", offset));
+	}
+
+	private void moveIntoPlace(Path part, Path target) throws IOException {
+		try {
+			Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private File ensureWritableDirectory(String directory) {
+		Path path = Paths.get(directory);
+
+		File outputDirectory = path.toFile();
+
+		if (!Files.exists(path)) {
+			try {
+				outputDirectory = Files.createDirectory(path).toFile();
+
+			}
+
+			catch (IOException e) {
+				fatal(e.getMessage());
+			}
+		}
+
+		if (!outputDirectory.isDirectory()) {
+			outputDirectory.delete();
+			fatal(String.format("%s is not a directory", path.toString()));
+		}
+
+		if (!Files.isWritable(path)) {
+			outputDirectory.delete();
+			fatal(String.format("%s is not writable", path.toString()));
+		}
+
+		return outputDirectory;
+	}
+
+	private static class Checksum {
+
+		private final String algorithm;
+
+		private final String value;
+
+		Checksum(String algorithm, String value) {
+			this.algorithm = algorithm;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+/**
+ * The HTTP validators and content digests recorded for a downloaded artifact. The validators are used to make a later
+ * download of the same artifact conditional, the digests to verify the local file without downloading it again.
+ **/
+public class ArtifactState {
+
+	private final String etag;
+
+	private final String lastModified;
+
+	private final long contentLength;
+
+	private final String sha1;
+
+	private final String sha256;
+
+	/**
+	 * @param etag          the 'ETag' response header, or null
+	 * @param lastModified  the 'Last-Modified' response header, or null
+	 * @param contentLength the artifact size in bytes, or -1 if unknown
+	 * @param sha1          the hex encoded SHA-1 digest of the content, or null if unknown
+	 * @param sha256        the hex encoded SHA-256 digest of the content, or null if unknown
+	 */
+	public ArtifactState(String etag, String lastModified, long contentLength, String sha1, String sha256) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.contentLength = contentLength;
+		this.sha1 = sha1;
+		this.sha256 = sha256;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	public String getSha1() {
+		return sha1;
+	}
+
+	public String getSha256() {
+		return sha256;
+	}
+}
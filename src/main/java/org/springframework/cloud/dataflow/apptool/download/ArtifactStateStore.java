@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.springframework.cloud.dataflow.apptool.FileLocks;
+import org.springframework.util.StringUtils;
+
+import static org.springframework.cloud.dataflow.apptool.Utils.loadPropertiesFile;
+import static org.springframework.cloud.dataflow.apptool.Utils.message;
+
+/**
+ * Persists the {@link ArtifactState} of each downloaded artifact, keyed by file name, in
+ * 'download-state.properties' in the local repository directory. The file is loaded once and written back by
+ * {@link #flush()}, typically once at the end of a command.
+ * <p>
+ * Another process sharing the repository may have written the file in the meantime, so {@link #flush()} holds the
+ * 'download-state' {@link FileLocks file lock}, reloads the file and applies only the entries changed here before
+ * writing it back.
+ **/
+public class ArtifactStateStore {
+
+	private static final String ETAG = ".etag";
+
+	private static final String LAST_MODIFIED = ".last-modified";
+
+	private static final String CONTENT_LENGTH = ".content-length";
+
+	private static final String SHA1 = ".sha1";
+
+	private static final String SHA256 = ".sha256";
+
+	private final Path stateFile;
+
+	private final Path lockFile;
+
+	private Map<String, ArtifactState> states;
+
+	private final Set<String> changed = new HashSet<>();
+
+	public ArtifactStateStore(String localRepoDirectory) {
+		this.stateFile = Paths.get(localRepoDirectory, "download-state.properties");
+		this.lockFile = FileLocks.lockFile(localRepoDirectory, "download-state");
+	}
+
+	public synchronized ArtifactState get(String filename) {
+		return states().get(filename);
+	}
+
+	public synchronized void put(String filename, ArtifactState state) {
+		states().put(filename, state);
+		changed.add(filename);
+	}
+
+	public synchronized void remove(String filename) {
+		if (states().remove(filename) != null) {
+			changed.add(filename);
+		}
+	}
+
+	public synchronized void clean() {
+		states = new HashMap<>();
+		changed.clear();
+		try {
+			FileLocks.withLock(lockFile, () -> Files.deleteIfExists(stateFile));
+		}
+		catch (IOException e) {
+			message("Error:" + e.getMessage());
+		}
+	}
+
+	/**
+	 * Merge the entries changed since the state was loaded or last flushed into the state on disk.
+	 */
+	public synchronized void flush() {
+		if (changed.isEmpty()) {
+			return;
+		}
+		try {
+			FileLocks.withLock(lockFile, () -> {
+				Map<String, ArtifactState> merged = load();
+				changed.forEach(filename -> {
+					ArtifactState state = states.get(filename);
+					if (state == null) {
+						merged.remove(filename);
+					}
+					else {
+						merged.put(filename, state);
+					}
+				});
+				write(merged);
+				states = merged;
+				changed.clear();
+				return null;
+			});
+		}
+		catch (IOException e) {
+			message("Error:" + e.getMessage());
+		}
+	}
+
+	private void write(Map<String, ArtifactState> states) throws IOException {
+		Map<String, String> properties = new TreeMap<>();
+		states.forEach((filename, state) -> {
+			if (StringUtils.hasText(state.getEtag())) {
+				properties.put(filename + ETAG, state.getEtag());
+			}
+			if (StringUtils.hasText(state.getLastModified())) {
+				properties.put(filename + LAST_MODIFIED, state.getLastModified());
+			}
+			if (state.getContentLength() >= 0) {
+				properties.put(filename + CONTENT_LENGTH, String.valueOf(state.getContentLength()));
+			}
+			if (StringUtils.hasText(state.getSha1())) {
+				properties.put(filename + SHA1, state.getSha1());
+			}
+			if (StringUtils.hasText(state.getSha256())) {
+				properties.put(filename + SHA256, state.getSha256());
+			}
+		});
+
+		Path temp = Files.createTempFile(stateFile.getParent(), "download-state", ".tmp");
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp))) {
+			properties.forEach((k, v) -> writer.println(String.format("%s=%s", k, v)));
+		}
+		try {
+			Files.move(temp, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private Map<String, ArtifactState> states() {
+		if (states == null) {
+			states = load();
+		}
+		return states;
+	}
+
+	private Map<String, ArtifactState> load() {
+		Map<String, ArtifactState> result = new HashMap<>();
+		if (!Files.exists(stateFile)) {
+			return result;
+		}
+
+		Map<String, String> properties;
+		try {
+			properties = loadPropertiesFile(stateFile.toFile());
+		}
+		catch (Exception e) {
+			message(String.format("Ignoring unreadable %s: %s", stateFile, e.getMessage()));
+			return result;
+		}
+
+		properties.keySet().stream()
+			.filter(k -> k.endsWith(CONTENT_LENGTH) || k.endsWith(ETAG) || k.endsWith(LAST_MODIFIED)
+				|| k.endsWith(SHA1) || k.endsWith(SHA256))
+			.map(k -> k.substring(0, k.lastIndexOf('.')))
+			.distinct()
+			.forEach(filename -> {
+				String contentLength = properties.get(filename + CONTENT_LENGTH);
+				result.put(filename, new ArtifactState(properties.get(filename + ETAG),
+					properties.get(filename + LAST_MODIFIED),
+					contentLength == null ? -1L : Long.parseLong(contentLength), properties.get(filename + SHA1),
+					properties.get(filename + SHA256)));
+			});
+		return result;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.springframework.cloud.dataflow.apptool.AppResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Runs transfers through a delegate {@link Consumer} concurrently, bounded by a global limit and a limit per host.
+ * Results are collected per artifact and returned by {@link #awaitCompletion()}, so failures can be reported once at
+ * the end of a command rather than interleaved with progress output.
+ * <p>
+ * Transfers waiting for their host to drop below its limit are held in a queue per host and only handed to a worker
+ * thread once they can start, so a large backlog against one slow host neither ties up threads nor delays transfers
+ * from other hosts. Worker threads are only needed for transfers that are actually in flight. The host a transfer
+ * counts against is chosen by a function given to the constructor, e.g. {@link MirrorSelector#hostOf(AppResource)} so
+ * that it is the mirror the transfer will be served from.
+ **/
+public class DownloadExecutor implements Consumer<AppResource> {
+
+	private final Consumer<AppResource> delegate;
+
+	private final ExecutorService executorService;
+
+	private final int maxConcurrentPerHost;
+
+	private final Function<AppResource, String> hostOf;
+
+	private final Map<String, HostQueue> hostQueues = new HashMap<>();
+
+	private final List<CompletableFuture<DownloadResult>> pending = new ArrayList<>();
+
+	/**
+	 * @param delegate             performs the actual transfer and throws an exception on failure
+	 * @param maxConcurrent        the maximum number of transfers in flight
+	 * @param maxConcurrentPerHost the maximum number of transfers in flight against a single host
+	 */
+	public DownloadExecutor(Consumer<AppResource> delegate, int maxConcurrent, int maxConcurrentPerHost) {
+		this(delegate, maxConcurrent, maxConcurrentPerHost, DownloadExecutor::hostOf);
+	}
+
+	/**
+	 * @param delegate             performs the actual transfer and throws an exception on failure
+	 * @param maxConcurrent        the maximum number of transfers in flight
+	 * @param maxConcurrentPerHost the maximum number of transfers in flight against a single host
+	 * @param hostOf               the host a transfer of the resource will be served from
+	 */
+	public DownloadExecutor(Consumer<AppResource> delegate, int maxConcurrent, int maxConcurrentPerHost,
+		Function<AppResource, String> hostOf) {
+		Assert.notNull(delegate, "delegate must not be null");
+		Assert.notNull(hostOf, "hostOf must not be null");
+		Assert.isTrue(maxConcurrent > 0, "maxConcurrent must be greater than 0");
+		Assert.isTrue(maxConcurrentPerHost > 0, "maxConcurrentPerHost must be greater than 0");
+		this.delegate = delegate;
+		this.maxConcurrentPerHost = maxConcurrentPerHost;
+		this.hostOf = hostOf;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("download-");
+		threadFactory.setDaemon(true);
+		this.executorService = Executors.newFixedThreadPool(maxConcurrent, threadFactory);
+	}
+
+	@Override
+	public void accept(AppResource appResource) {
+		submit(appResource, delegate);
+	}
+
+	/**
+	 * Run a transfer through the given consumer instead of the delegate, e.g. one limited to the rate of a single
+	 * command. It counts against the same limits as every other transfer.
+	 */
+	public void submit(AppResource appResource, Consumer<AppResource> transfer) {
+		CompletableFuture<DownloadResult> result = new CompletableFuture<>();
+		// outside the lock, as choosing a mirror may probe the mirrors first
+		String host = hostOf.apply(appResource);
+		synchronized (hostQueues) {
+			pending.add(result);
+			HostQueue hostQueue = hostQueues.computeIfAbsent(host == null ? "" : host.toLowerCase(),
+				h -> new HostQueue());
+			hostQueue.waiting.add(new Transfer(appResource, transfer, result));
+			dispatch(hostQueue);
+		}
+	}
+
+	/**
+	 * Wait for all transfers submitted since the last call to complete.
+	 * @return the results in submission order
+	 */
+	public DownloadReport awaitCompletion() {
+		List<CompletableFuture<DownloadResult>> futures;
+		synchronized (hostQueues) {
+			futures = new ArrayList<>(pending);
+			pending.clear();
+		}
+
+		List<DownloadResult> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<DownloadResult> future : futures) {
+			try {
+				results.add(future.get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for downloads to complete", e);
+			}
+			catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return new DownloadReport(results);
+	}
+
+	public void shutdown() {
+		executorService.shutdownNow();
+	}
+
+	/**
+	 * Start waiting transfers for a host while it is below its limit. Must be called holding the lock on
+	 * {@link #hostQueues}.
+	 */
+	private void dispatch(HostQueue hostQueue) {
+		while (hostQueue.active < maxConcurrentPerHost && !hostQueue.waiting.isEmpty()) {
+			Transfer transfer = hostQueue.waiting.poll();
+			hostQueue.active++;
+			executorService.execute(() -> run(hostQueue, transfer));
+		}
+	}
+
+	private void run(HostQueue hostQueue, Transfer transfer) {
+		long start = System.currentTimeMillis();
+		try {
+			transfer.consumer.accept(transfer.appResource);
+			transfer.result.complete(
+				new DownloadResult(transfer.appResource, null, System.currentTimeMillis() - start));
+		}
+		catch (Throwable e) {
+			// errors too, or the result would never complete and awaitCompletion() would block forever
+			transfer.result.complete(new DownloadResult(transfer.appResource, e, System.currentTimeMillis() - start));
+		}
+		finally {
+			synchronized (hostQueues) {
+				hostQueue.active--;
+				dispatch(hostQueue);
+			}
+		}
+	}
+
+	private static String hostOf(AppResource appResource) {
+		return appResource.getUrl().getHost();
+	}
+
+	private static class HostQueue {
+
+		private final Queue<Transfer> waiting = new ArrayDeque<>();
+
+		private int active;
+	}
+
+	private static class Transfer {
+
+		private final AppResource appResource;
+
+		private final Consumer<AppResource> consumer;
+
+		private final CompletableFuture<DownloadResult> result;
+
+		Transfer(AppResource appResource, Consumer<AppResource> consumer, CompletableFuture<DownloadResult> result) {
+			this.appResource = appResource;
+			this.consumer = consumer;
+			this.result = result;
+		}
+	}
+}
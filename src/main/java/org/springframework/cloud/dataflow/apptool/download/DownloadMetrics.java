@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+import org.springframework.cloud.dataflow.apptool.AppResource;
+import org.springframework.util.StringUtils;
+
+/**
+ * Records the outcome of each artifact download in a Micrometer registry: time to first byte, total time, bytes,
+ * throughput, retries against other mirrors and failures by reason. Meters are tagged with the component type of the
+ * artifact and the binder of the command that requested it ('none' for task apps and 'repo add').
+ * <p>
+ * The meters can be rendered in the Prometheus text format with {@link #scrape()} and written to the file set with
+ * {@link #setExportFile(String)} at the end of each command.
+ **/
+public class DownloadMetrics {
+
+	static final String PREFIX = "scdf.apptool.download.";
+
+	private static final String NONE = "none";
+
+	private final PrometheusMeterRegistry registry;
+
+	private volatile String binder = NONE;
+
+	private String exportFile;
+
+	public DownloadMetrics() {
+		this(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+	}
+
+	public DownloadMetrics(PrometheusMeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * @param binder the binder to tag subsequent downloads with, or null if they are not stream apps
+	 */
+	public void setBinder(String binder) {
+		this.binder = StringUtils.hasText(binder) ? binder : NONE;
+	}
+
+	/**
+	 * @param exportFile the file to write the Prometheus text dump to on {@link #export()}, or empty for none
+	 */
+	public void setExportFile(String exportFile) {
+		this.exportFile = exportFile;
+	}
+
+	public PrometheusMeterRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Record the time from sending the request to reading the first byte of the content of a 200 or 206 response.
+	 */
+	public void timeToFirstByte(AppResource appResource, long nanos) {
+		Timer.builder(PREFIX + "ttfb").description("Time to first byte of an artifact download")
+			.tags(tags(appResource)).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void completed(AppResource appResource, long bytes, long nanos, int retries) {
+		Tags tags = tags(appResource);
+		timer(tags, "transferred").record(nanos, TimeUnit.NANOSECONDS);
+		DistributionSummary.builder(PREFIX + "bytes").description("Size of downloaded artifacts").baseUnit("bytes")
+			.tags(tags).register(registry).record(bytes);
+		if (nanos > 0) {
+			DistributionSummary.builder(PREFIX + "throughput").description("Transfer rate of artifact downloads")
+				.baseUnit("bytes_per_second").tags(tags).register(registry)
+				.record(bytes * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+		}
+		retries(tags, retries);
+	}
+
+	public void upToDate(AppResource appResource, long nanos, int retries) {
+		Tags tags = tags(appResource);
+		timer(tags, "up_to_date").record(nanos, TimeUnit.NANOSECONDS);
+		retries(tags, retries);
+	}
+
+	public void failed(AppResource appResource, Throwable failure, long nanos, int retries) {
+		Tags tags = tags(appResource);
+		timer(tags, "failed").record(nanos, TimeUnit.NANOSECONDS);
+		Counter.builder(PREFIX + "failures").description("Failed artifact downloads")
+			.tags(tags.and("reason", reason(failure))).register(registry).increment();
+		retries(tags, retries);
+	}
+
+	/**
+	 * @return the current meters in the Prometheus text format
+	 */
+	public String scrape() {
+		return registry.scrape();
+	}
+
+	/**
+	 * Write {@link #scrape()} to the export file, if one is set, replacing the previous dump.
+	 */
+	public void export() throws IOException {
+		if (StringUtils.hasText(exportFile)) {
+			export(Paths.get(exportFile));
+		}
+	}
+
+	public void export(Path path) throws IOException {
+		Path parent = path.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		Files.write(temp, scrape().getBytes(StandardCharsets.UTF_8));
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private Timer timer(Tags tags, String outcome) {
+		return Timer.builder(PREFIX + "duration").description("Total time of an artifact download, including retries")
+			.tags(tags.and("outcome", outcome)).register(registry);
+	}
+
+	private void retries(Tags tags, int retries) {
+		if (retries > 0) {
+			Counter.builder(PREFIX + "retries").description("Download attempts repeated against another mirror")
+				.tags(tags).register(registry).increment(retries);
+		}
+	}
+
+	private Tags tags(AppResource appResource) {
+		return Tags.of("type", appResource.getComponentType(), "binder", binder);
+	}
+
+	private static String reason(Throwable failure) {
+		if (failure instanceof HttpStatusException) {
+			return "http_" + ((HttpStatusException) failure).getStatus();
+		}
+		return failure.getClass().getSimpleName();
+	}
+}
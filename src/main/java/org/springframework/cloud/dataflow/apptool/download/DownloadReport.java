@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The collected {@link DownloadResult}s of a batch of transfers.
+ **/
+public class DownloadReport {
+
+	private final List<DownloadResult> results;
+
+	DownloadReport(List<DownloadResult> results) {
+		this.results = Collections.unmodifiableList(results);
+	}
+
+	public List<DownloadResult> getResults() {
+		return results;
+	}
+
+	public List<DownloadResult> getFailures() {
+		return results.stream().filter(r -> !r.isSuccessful()).collect(Collectors.toList());
+	}
+
+	public String summary() {
+		return String.format("downloaded %d of %d artifacts", results.size() - getFailures().size(), results.size());
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import org.springframework.cloud.dataflow.apptool.AppResource;
+
+/**
+ * The outcome of a single artifact transfer submitted to a {@link DownloadExecutor}.
+ **/
+public class DownloadResult {
+
+	private final AppResource appResource;
+
+	private final Throwable failure;
+
+	private final long elapsedMillis;
+
+	DownloadResult(AppResource appResource, Throwable failure, long elapsedMillis) {
+		this.appResource = appResource;
+		this.failure = failure;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public AppResource getAppResource() {
+		return appResource;
+	}
+
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public boolean isSuccessful() {
+		return failure == null;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.IOException;
+
+/**
+ * Signals an unexpected HTTP response status.
+ **/
+class HttpStatusException extends IOException {
+
+	private final int status;
+
+	HttpStatusException(int status, String reason) {
+		super(String.format("HTTP %d %s", status, reason));
+		this.status = status;
+	}
+
+	int getStatus() {
+		return status;
+	}
+
+	boolean isServerError() {
+		return status >= 500;
+	}
+}
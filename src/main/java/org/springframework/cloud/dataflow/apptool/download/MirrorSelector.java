@@ -0,0 +1,274 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.cloud.dataflow.apptool.AppResource;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Chooses among the maven repositories configured in 'maven.repo.url', which may be a comma separated list of mirrors
+ * holding the same artifacts. {@link AppResource}s are always built against the first (primary) mirror; for each
+ * maven artifact, {@link #candidates(AppResource)} returns the equivalent URL on every mirror, fastest healthy mirror
+ * first.
+ * <p>
+ * Mirrors are ranked by a moving average of their response latency, plus the time a 1 MB transfer takes at their
+ * observed throughput. The average starts from a HEAD request to each mirror on first use and follows the latency of
+ * every request the downloads make to it, so a mirror that slows down loses its place. A mirror that fails with a server error
+ * or an I/O error such as a read timeout is moved to the back of the list for a backoff period that doubles with each
+ * consecutive failure.
+ **/
+public class MirrorSelector {
+
+	static final long INITIAL_BACKOFF_MILLIS = 1000L;
+
+	static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000L;
+
+	private static final double SMOOTHING = 0.3;
+
+	private static final double REFERENCE_SIZE = 1024 * 1024;
+
+	private final List<Mirror> mirrors;
+
+	private final TransferClient transferClient;
+
+	private volatile boolean probed;
+
+	public MirrorSelector(String[] mirrorUrls, TransferClient transferClient) {
+		Assert.notEmpty(mirrorUrls, "at least one maven repository URL is required");
+		this.mirrors = Stream.of(mirrorUrls).map(String::trim).filter(StringUtils::hasText)
+			.map(u -> u.endsWith("/") ? u.substring(0, u.length() - 1) : u)
+			.map(Mirror::new)
+			.collect(Collectors.toList());
+		this.transferClient = transferClient;
+		this.probed = mirrors.size() == 1;
+	}
+
+	/**
+	 * @return the URL of the primary mirror, used to build {@link AppResource}s
+	 */
+	public String getPrimary() {
+		return mirrors.get(0).url;
+	}
+
+	/**
+	 * @return the URLs to try for the resource, in order of preference
+	 */
+	public List<URL> candidates(AppResource appResource) {
+		if (!isMirrored(appResource)) {
+			return Collections.singletonList(appResource.getUrl());
+		}
+		String path = appResource.getUrl().toString().substring(getPrimary().length());
+		List<Mirror> ranked = ranked();
+		List<URL> candidates = new ArrayList<>(ranked.size());
+		for (Mirror mirror : ranked) {
+			try {
+				candidates.add(new URL(mirror.url + path));
+			}
+			catch (MalformedURLException e) {
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * @return the host that {@link #candidates(AppResource)} currently puts first for the resource, found without
+	 * building the URL of a maven artifact
+	 */
+	public String hostOf(AppResource appResource) {
+		if (!appResource.isMavenArtifact()) {
+			return appResource.getUrl().getHost();
+		}
+		return isMirrored(appResource) ? ranked().get(0).host : Mirror.host(appResource.getMavenRepoUrl());
+	}
+
+	/**
+	 * @return true if the resource is a maven artifact in the primary mirror and there are other mirrors to choose from
+	 */
+	private boolean isMirrored(AppResource appResource) {
+		return appResource.isMavenArtifact() && mirrors.size() > 1
+			&& (appResource.getMavenRepoUrl() + "/").startsWith(getPrimary() + "/");
+	}
+
+	/**
+	 * @return the mirrors, healthy ones first and then by expected cost
+	 */
+	private List<Mirror> ranked() {
+		if (!probed) {
+			probe();
+		}
+		long now = System.currentTimeMillis();
+		List<Mirror> ranked;
+		synchronized (mirrors) {
+			// a mirror not yet used for a transfer is assumed to be as slow as the slowest one measured
+			double slowest = mirrors.stream().mapToDouble(m -> m.throughput).filter(t -> !Double.isNaN(t)).min()
+				.orElse(Double.NaN);
+			ranked = new ArrayList<>(mirrors);
+			ranked.sort(Comparator.comparing((Mirror m) -> m.unhealthyUntil > now)
+				.thenComparingDouble(m -> m.cost(slowest)));
+		}
+		return ranked;
+	}
+
+	/**
+	 * Record the time the mirror serving {@code url} took to answer a request, from sending it to receiving the
+	 * response headers.
+	 */
+	public void responded(URL url, long latencyMillis) {
+		Mirror mirror = mirrorFor(url);
+		if (mirror == null) {
+			return;
+		}
+		synchronized (mirrors) {
+			mirror.latency = average(mirror.latency, latencyMillis);
+		}
+	}
+
+	/**
+	 * Record a completed transfer from the mirror serving {@code url}.
+	 */
+	public void succeeded(URL url, long bytes, long elapsedMillis) {
+		Mirror mirror = mirrorFor(url);
+		if (mirror == null) {
+			return;
+		}
+		synchronized (mirrors) {
+			mirror.failures = 0;
+			mirror.unhealthyUntil = 0L;
+			if (bytes > 0 && elapsedMillis > 0) {
+				mirror.throughput = average(mirror.throughput, (double) bytes / elapsedMillis);
+			}
+		}
+	}
+
+	/**
+	 * Record a failed transfer from the mirror serving {@code url}. Client errors, e.g., an artifact missing from one
+	 * mirror, do not count against the mirror's health.
+	 */
+	public void failed(URL url, IOException failure) {
+		Mirror mirror = mirrorFor(url);
+		if (mirror == null || (failure instanceof HttpStatusException
+			&& !((HttpStatusException) failure).isServerError())) {
+			return;
+		}
+		synchronized (mirrors) {
+			mirror.failures++;
+			long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(mirror.failures - 1, 20));
+			mirror.unhealthyUntil = System.currentTimeMillis() + backoff;
+		}
+	}
+
+	private synchronized void probe() {
+		if (probed) {
+			return;
+		}
+		CompletableFuture.allOf(mirrors.stream()
+			.map(mirror -> CompletableFuture.runAsync(() -> probe(mirror)))
+			.toArray(CompletableFuture[]::new))
+			.join();
+		probed = true;
+	}
+
+	private void probe(Mirror mirror) {
+		long start = System.currentTimeMillis();
+		try (TransferClient.Response response = transferClient.head(new URL(mirror.url + "/"))) {
+			long latency = System.currentTimeMillis() - start;
+			synchronized (mirrors) {
+				mirror.latency = average(mirror.latency, latency);
+				if (response.getStatus() >= 500) {
+					mirror.failures++;
+					mirror.unhealthyUntil = System.currentTimeMillis() + INITIAL_BACKOFF_MILLIS;
+				}
+			}
+		}
+		catch (IOException e) {
+			failed(mirror, e);
+		}
+	}
+
+	private void failed(Mirror mirror, IOException e) {
+		try {
+			failed(new URL(mirror.url + "/"), e);
+		}
+		catch (MalformedURLException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+
+	private Mirror mirrorFor(URL url) {
+		String u = url.toString();
+		return mirrors.stream().filter(m -> u.startsWith(m.url + "/")).findFirst().orElse(null);
+	}
+
+	private static double average(double current, double sample) {
+		return Double.isNaN(current) ? sample : current + SMOOTHING * (sample - current);
+	}
+
+	private static class Mirror {
+
+		private final String url;
+
+		private final String host;
+
+		private double latency = Double.NaN;
+
+		private double throughput = Double.NaN;
+
+		private int failures;
+
+		private long unhealthyUntil;
+
+		Mirror(String url) {
+			this.url = url;
+			this.host = host(url);
+		}
+
+		/**
+		 * @return the host of a repository URL, or the URL itself if it cannot be parsed
+		 */
+		private static String host(String url) {
+			try {
+				return new URL(url).getHost();
+			}
+			catch (MalformedURLException e) {
+				return String.valueOf(url);
+			}
+		}
+
+		/**
+		 * The expected time in milliseconds to fetch a 1 MB artifact.
+		 * @param defaultThroughput the throughput to assume if none has been measured for this mirror
+		 */
+		private double cost(double defaultThroughput) {
+			double cost = Double.isNaN(latency) ? 0 : latency;
+			double bytesPerMilli = Double.isNaN(throughput) ? defaultThroughput : throughput;
+			return Double.isNaN(bytesPerMilli) ? cost : cost + REFERENCE_SIZE / bytesPerMilli;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * A token bucket limiting the combined transfer rate of all downloads, in bytes per second. The bucket holds at most
+ * one second's worth of tokens. A transfer takes tokens for each chunk it has read and, if the bucket is overdrawn,
+ * waits until it has refilled. Waiting transfers are served in arrival order, so concurrent downloads share the
+ * bandwidth evenly, one chunk at a time.
+ * <p>
+ * A limiter may have a parent, e.g. a limit for the transfers of one command under the limit shared by all of them.
+ * Tokens are then taken from both, so the transfers are held to whichever rate is lower.
+ **/
+public class RateLimiter {
+
+	private final ReentrantLock lock = new ReentrantLock(true);
+
+	private final RateLimiter parent;
+
+	private volatile long bytesPerSecond;
+
+	private double tokens;
+
+	private long lastRefill = System.nanoTime();
+
+	/**
+	 * @param bytesPerSecond the maximum rate, or 0 for no limit
+	 */
+	public RateLimiter(long bytesPerSecond) {
+		this(bytesPerSecond, null);
+	}
+
+	/**
+	 * @param bytesPerSecond the maximum rate, or 0 for no limit other than the parent's
+	 * @param parent         the limiter to also take tokens from, or null
+	 */
+	public RateLimiter(long bytesPerSecond, RateLimiter parent) {
+		this.parent = parent;
+		setRate(bytesPerSecond);
+	}
+
+	/**
+	 * Parse a rate such as '20MB' or '512KB' (per second). A plain number is taken as bytes.
+	 * @return the rate in bytes per second, or 0 for no limit if the value is empty
+	 */
+	public static long parseRate(String rate) {
+		if (!StringUtils.hasText(rate)) {
+			return 0L;
+		}
+		long bytesPerSecond;
+		try {
+			bytesPerSecond = DataSize.parse(rate.trim()).toBytes();
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(String.format("invalid rate '%s', expected e.g. 20MB or 512KB", rate));
+		}
+		if (bytesPerSecond < 0) {
+			throw new IllegalArgumentException(String.format("invalid rate '%s', must not be negative", rate));
+		}
+		return bytesPerSecond;
+	}
+
+	public long getRate() {
+		return bytesPerSecond;
+	}
+
+	public void setRate(long bytesPerSecond) {
+		lock.lock();
+		try {
+			this.bytesPerSecond = Math.max(0L, bytesPerSecond);
+			this.tokens = Math.min(tokens, this.bytesPerSecond);
+			this.lastRefill = System.nanoTime();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Take {@code bytes} tokens, waiting until the bucket, and then the parent's, is no longer overdrawn.
+	 */
+	public void acquire(int bytes) throws InterruptedIOException {
+		take(bytes);
+		if (parent != null) {
+			parent.acquire(bytes);
+		}
+	}
+
+	private void take(int bytes) throws InterruptedIOException {
+		if (bytesPerSecond <= 0) {
+			return;
+		}
+		lock.lock();
+		try {
+			long rate = bytesPerSecond;
+			if (rate <= 0) {
+				return;
+			}
+			refill(rate);
+			tokens -= bytes;
+			if (tokens < 0) {
+				TimeUnit.NANOSECONDS.sleep((long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate));
+				refill(rate);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for bandwidth");
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void refill(long rate) {
+		long now = System.nanoTime();
+		tokens = Math.min(rate, tokens + (double) (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+		lastRefill = now;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * A single client shared by all transfers. HTTP(S) requests go through a pooled, keep-alive connection manager, so
+ * consecutive artifacts from the same repository reuse an established connection instead of paying for TCP and TLS
+ * setup each time. Other URLs, e.g., 'file:', are opened with {@link URLConnection} and adapted to the same
+ * {@link Response}.
+ **/
+public class TransferClient implements Closeable {
+
+	private final CloseableHttpClient httpClient;
+
+	/**
+	 * @param maxConnections        the maximum number of pooled connections
+	 * @param maxConnectionsPerHost the maximum number of pooled connections to a single host
+	 * @param connectTimeout        the connect timeout in milliseconds
+	 * @param readTimeout           the socket read timeout in milliseconds
+	 */
+	public TransferClient(int maxConnections, int maxConnectionsPerHost, int connectTimeout, int readTimeout) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+		this.httpClient = HttpClients.custom()
+			.setConnectionManager(connectionManager)
+			.setDefaultRequestConfig(RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout)
+				.build())
+			.disableContentCompression()
+			.build();
+	}
+
+	public Response get(URL url) throws IOException {
+		return get(url, Collections.emptyMap());
+	}
+
+	/**
+	 * @param url     the resource URL
+	 * @param headers request headers, ignored for non HTTP URLs
+	 * @return the response, which must be closed
+	 */
+	public Response get(URL url, Map<String, String> headers) throws IOException {
+		if (!isHttp(url)) {
+			return open(url);
+		}
+		HttpGet request = new HttpGet(toUri(url));
+		headers.forEach(request::setHeader);
+		return execute(request);
+	}
+
+	public Response head(URL url) throws IOException {
+		if (!isHttp(url)) {
+			Response response = open(url);
+			response.close();
+			return response;
+		}
+		return execute(new HttpHead(toUri(url)));
+	}
+
+	/**
+	 * @return true if the resource exists
+	 */
+	public boolean exists(URL url) {
+		try (Response response = head(url)) {
+			return response.getStatus() == 200;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		httpClient.close();
+	}
+
+	private Response execute(HttpRequestBase request) throws IOException {
+		CloseableHttpResponse httpResponse = httpClient.execute(request);
+		return new Response(httpResponse.getStatusLine().getStatusCode(),
+			httpResponse.getStatusLine().getReasonPhrase()) {
+
+			@Override
+			public String getHeader(String name) {
+				Header header = httpResponse.getFirstHeader(name);
+				return header == null ? null : header.getValue();
+			}
+
+			@Override
+			public InputStream getBody() throws IOException {
+				HttpEntity entity = httpResponse.getEntity();
+				if (entity == null) {
+					throw new IOException(String.format("No content for %s", request.getURI()));
+				}
+				return entity.getContent();
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					if (getStatus() >= 300) {
+						// release the connection for reuse rather than dropping it
+						EntityUtils.consumeQuietly(httpResponse.getEntity());
+					}
+				}
+				finally {
+					httpResponse.close();
+				}
+			}
+		};
+	}
+
+	private Response open(URL url) throws IOException {
+		URLConnection connection = url.openConnection();
+		InputStream in;
+		try {
+			in = connection.getInputStream();
+		}
+		catch (FileNotFoundException e) {
+			return new Response(404, e.getMessage()) {
+
+				@Override
+				public String getHeader(String name) {
+					return null;
+				}
+
+				@Override
+				public InputStream getBody() throws IOException {
+					throw e;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		return new Response(200, "OK") {
+
+			@Override
+			public String getHeader(String name) {
+				return connection.getHeaderField(name);
+			}
+
+			@Override
+			public long getContentLength() {
+				return connection.getContentLengthLong();
+			}
+
+			@Override
+			public long getLastModified() {
+				return connection.getLastModified();
+			}
+
+			@Override
+			public InputStream getBody() {
+				return in;
+			}
+
+			@Override
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+
+	private static boolean isHttp(URL url) {
+		return "http".equals(url.getProtocol()) || "https".equals(url.getProtocol());
+	}
+
+	private static URI toUri(URL url) throws IOException {
+		try {
+			return url.toURI();
+		}
+		catch (URISyntaxException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * The status, headers and content of a request.
+	 */
+	public abstract static class Response implements Closeable {
+
+		private final int status;
+
+		private final String reason;
+
+		Response(int status, String reason) {
+			this.status = status;
+			this.reason = reason;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		/**
+		 * @return the value of the first header with the given name, or null
+		 */
+		public abstract String getHeader(String name);
+
+		public abstract InputStream getBody() throws IOException;
+
+		/**
+		 * @return the content length, or -1 if unknown
+		 */
+		public long getContentLength() {
+			String contentLength = getHeader("Content-Length");
+			return contentLength == null ? -1L : Long.parseLong(contentLength.trim());
+		}
+
+		/**
+		 * @return the 'Last-Modified' time in milliseconds since the epoch, or 0 if unknown
+		 */
+		public long getLastModified() {
+			String lastModified = getHeader("Last-Modified");
+			Date date = lastModified == null ? null : DateUtils.parseDate(lastModified);
+			return date == null ? 0L : date.getTime();
+		}
+	}
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.fsck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.springframework.cloud.dataflow.apptool.AppInfo;
+import org.springframework.cloud.dataflow.apptool.AppResource;
+import org.springframework.cloud.dataflow.apptool.CatalogCache;
+import org.springframework.cloud.dataflow.apptool.FileLocks;
+import org.springframework.cloud.dataflow.apptool.download.ArtifactState;
+import org.springframework.cloud.dataflow.apptool.download.ArtifactStateStore;
+import org.springframework.util.StringUtils;
+
+import static org.springframework.cloud.dataflow.apptool.Utils.toHex;
+
+/**
+ * Reconciles {@link AppInfo} with the jars actually present in the local repository directory.
+ * <p>
+ * The directory tree is walked by a fork-join task per directory, which forks a task per jar, so listing, opening and
+ * hashing jars all run in parallel. A jar is opened as a zip file, which only reads its central directory, to check it
+ * is readable and to find its 'META-INF/maven/&#42;&#42;/pom.properties'. It is only hashed if a digest was recorded
+ * for it in the {@link ArtifactStateStore}, as there is nothing to verify it against otherwise.
+ * <p>
+ * The findings are then cross-checked against the index:
+ * <ul>
+ * <li>entries whose file no longer exists are missing;</li>
+ * <li>jars that cannot be read or do not match their recorded digest are corrupt;</li>
+ * <li>jars that are not indexed are unindexed. Their key is the one the {@link #setCatalogs app catalogs} list for
+ * the 'groupId:artifactId:version' in their 'pom.properties'. Failing that, it is taken from the index entry,
+ * typically a missing one, for another version of the artifact, so a jar replaced by a version the catalogs do not
+ * list is indexed again under its old key. A '-metadata' jar takes the key of its app with a '.metadata'
+ * suffix.</li>
+ * </ul>
+ * On repair, missing and corrupt entries are removed from the index and the download state, corrupt jars are deleted
+ * so the next 'get' downloads them again, and unindexed jars with a derivable key are added to the index. The scan
+ * does not hold the artifact locks, so a corrupt jar is only deleted if, under its lock, it still has the size and
+ * modification time it was checked with; one replaced meanwhile, e.g. by a concurrent download, is left in place.
+ **/
+public class RepositoryChecker {
+
+	static final String METADATA_SUFFIX = "-metadata.jar";
+
+	private static final String JAR_SUFFIX = ".jar";
+
+	private static final String PART_SUFFIX = ".part";
+
+	private static final Pattern POM_PROPERTIES = Pattern.compile("META-INF/maven/[^/]+/[^/]+/pom\\.properties");
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final String directory;
+
+	private final AppInfo appInfo;
+
+	private final ArtifactStateStore artifactStateStore;
+
+	private final int parallelism;
+
+	private CatalogCache catalogCache;
+
+	private List<Path> catalogs = Collections.emptyList();
+
+	private String mavenRepoUrl;
+
+	public RepositoryChecker(String directory, AppInfo appInfo, ArtifactStateStore artifactStateStore,
+		int parallelism) {
+		this.directory = directory;
+		this.appInfo = appInfo;
+		this.artifactStateStore = artifactStateStore;
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @param catalogs     the app catalog files to look the key of an unindexed jar up in; those that do not exist are
+	 *                     skipped
+	 * @param mavenRepoUrl the maven repository URL the catalogs are resolved against
+	 */
+	public void setCatalogs(CatalogCache catalogCache, List<Path> catalogs, String mavenRepoUrl) {
+		this.catalogCache = catalogCache;
+		this.catalogs = catalogs;
+		this.mavenRepoUrl = mavenRepoUrl;
+	}
+
+	/**
+	 * @param repair true to fix the index, false to only report
+	 */
+	public RepositoryReport check(boolean repair) throws IOException {
+		long started = System.nanoTime();
+		RepositoryReport report = new RepositoryReport();
+		AtomicLong bytesHashed = new AtomicLong();
+
+		List<ScannedFile> scanned;
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			scanned = pool.invoke(new DirectoryTask(Paths.get(directory), bytesHashed));
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		Map<String, String> index = appInfo.findAllAsMap();
+		Map<String, String> keysByFilename = new HashMap<>();
+		index.forEach((key, filename) -> keysByFilename.put(filename, key));
+
+		Map<String, ScannedFile> jars = new HashMap<>();
+		for (ScannedFile file : scanned) {
+			if (file.isPart()) {
+				report.partial(file.filename);
+			}
+			else {
+				jars.put(file.filename, file);
+			}
+		}
+
+		keysByFilename.forEach((filename, key) -> {
+			if (!jars.containsKey(filename)) {
+				report.missing(filename);
+			}
+		});
+
+		List<ScannedFile> unindexed = new ArrayList<>();
+		for (ScannedFile jar : jars.values()) {
+			if (jar.problem != null && !jar.isNested()) {
+				report.corrupt(jar.filename, jar.problem);
+			}
+			else if (!keysByFilename.containsKey(jar.filename)) {
+				unindexed.add(jar);
+			}
+			else {
+				report.verified(jar.filename);
+			}
+		}
+		keysByFilename.keySet().removeAll(report.getMissing());
+		keysByFilename.keySet().removeAll(report.getCorrupt().keySet());
+
+		// apps before their metadata jars, so a metadata jar can take the key of an app indexed in the same run
+		unindexed.sort((a, b) -> Boolean.compare(a.isMetadata(), b.isMetadata()));
+		Map<String, String> filenamesByKey = new HashMap<>();
+		keysByFilename.forEach((filename, key) -> filenamesByKey.put(key, filename));
+		Map<String, Set<String>> catalogKeys = catalogKeys(unindexed);
+		for (ScannedFile jar : unindexed) {
+			if (jar.isNested()) {
+				report.unresolved(jar.filename, "the index only holds jars at the top of the repository directory");
+				continue;
+			}
+			String key = jar.isMetadata() ? metadataKey(jar.filename, keysByFilename) :
+				appKey(jar, catalogKeys, index);
+			if (key == null) {
+				report.unresolved(jar.filename, jar.isMetadata() ? "its app is not indexed" : "the artifact in its "
+					+ "pom.properties is not in a catalog, and there is no single index entry for another version");
+			}
+			else if (filenamesByKey.containsKey(key)) {
+				report.unresolved(jar.filename, String.format("%s is already indexed as %s", key,
+					filenamesByKey.get(key)));
+			}
+			else {
+				report.unindexed(key, jar.filename);
+				keysByFilename.put(jar.filename, key);
+				filenamesByKey.put(key, jar.filename);
+			}
+		}
+
+		if (repair) {
+			repair(report, jars);
+		}
+		report.setScanned(jars.size(), bytesHashed.get(), System.nanoTime() - started);
+		return report;
+	}
+
+	private void repair(RepositoryReport report, Map<String, ScannedFile> jars) throws IOException {
+		List<String> removed = new ArrayList<>(report.getMissing());
+		for (String filename : report.getCorrupt().keySet()) {
+			ScannedFile jar = jars.get(filename);
+			boolean deleted = FileLocks.withLock(FileLocks.lockFile(directory, filename), () -> {
+				Path path = Paths.get(directory, filename);
+				if (!jar.isUnchanged(path)) {
+					return false;
+				}
+				Files.deleteIfExists(path);
+				return true;
+			});
+			if (deleted) {
+				removed.add(filename);
+			}
+			else {
+				report.changed(filename);
+			}
+		}
+		List<AppResource> added = new ArrayList<>();
+		report.getUnindexed().forEach((key, filename) -> added.add(
+			new AppResource(key, Paths.get(directory, filename).toUri().toString(), null)));
+
+		appInfo.begin();
+		try {
+			appInfo.removeAll(removed);
+			appInfo.addAll(added);
+		}
+		finally {
+			appInfo.commit();
+		}
+		removed.forEach(artifactStateStore::remove);
+		artifactStateStore.flush();
+	}
+
+	/**
+	 * @return the keys the catalogs list for the artifact coordinates in the 'pom.properties' of the unindexed apps,
+	 * reading each catalog once
+	 */
+	private Map<String, Set<String>> catalogKeys(List<ScannedFile> unindexed) throws IOException {
+		Set<String> wanted = new HashSet<>();
+		for (ScannedFile jar : unindexed) {
+			if (!jar.isNested() && !jar.isMetadata()) {
+				jar.poms.forEach(pom -> wanted.add(artifactCoordinates(pom)));
+			}
+		}
+		Map<String, Set<String>> keys = new HashMap<>();
+		if (wanted.isEmpty() || catalogCache == null) {
+			return keys;
+		}
+		for (Path catalog : catalogs) {
+			if (!Files.exists(catalog)) {
+				continue;
+			}
+			catalogCache.find(catalog, mavenRepoUrl, AppResource.WILDCARD, AppResource.WILDCARD, appResource -> {
+				String coordinates = appResource.getArtifactCoordinates();
+				if (appResource.getClassifier() == null && wanted.contains(coordinates)) {
+					keys.computeIfAbsent(coordinates, c -> new TreeSet<>()).add(appResource.getKey());
+				}
+			});
+		}
+		return keys;
+	}
+
+	private static String appKey(ScannedFile jar, Map<String, Set<String>> catalogKeys, Map<String, String> index) {
+		for (Properties pom : jar.poms) {
+			Set<String> keys = catalogKeys.get(artifactCoordinates(pom));
+			if (keys != null && keys.size() == 1) {
+				return keys.iterator().next();
+			}
+		}
+		for (Properties pom : jar.poms) {
+			String key = appKey(pom.getProperty("artifactId"), index);
+			if (key != null) {
+				return key;
+			}
+		}
+		return null;
+	}
+
+	private static String artifactCoordinates(Properties pom) {
+		return String.join(":", pom.getProperty("groupId", ""), pom.getProperty("artifactId", ""),
+			pom.getProperty("version", ""));
+	}
+
+	/**
+	 * @param index the file names in the index, by key
+	 * @return the key of the one app indexed with a version of the artifact, i.e. a file name
+	 * '&lt;artifactId&gt;-&lt;version&gt;[-&lt;classifier&gt;].jar' where the version starts with a dotted number, or
+	 * null if there is none or more than one
+	 */
+	static String appKey(String artifactId, Map<String, String> index) {
+		if (!StringUtils.hasText(artifactId)) {
+			return null;
+		}
+		Pattern versions = Pattern.compile(Pattern.quote(artifactId) + "-\\d+\\.[^/]*\\.jar");
+		String found = null;
+		for (Map.Entry<String, String> entry : index.entrySet()) {
+			if (!entry.getValue().endsWith(METADATA_SUFFIX) && versions.matcher(entry.getValue()).matches()) {
+				if (found != null) {
+					return null;
+				}
+				found = entry.getKey();
+			}
+		}
+		return found;
+	}
+
+	private static String metadataKey(String filename, Map<String, String> keysByFilename) {
+		String appFilename = filename.substring(0, filename.length() - METADATA_SUFFIX.length()) + JAR_SUFFIX;
+		String appKey = keysByFilename.get(appFilename);
+		return appKey == null ? null : appKey + ".metadata";
+	}
+
+	/**
+	 * Lists a directory, forking a task for each subdirectory and each jar.
+	 */
+	private class DirectoryTask extends RecursiveTask<List<ScannedFile>> {
+
+		private final Path path;
+
+		private final AtomicLong bytesHashed;
+
+		DirectoryTask(Path path, AtomicLong bytesHashed) {
+			this.path = path;
+			this.bytesHashed = bytesHashed;
+		}
+
+		@Override
+		protected List<ScannedFile> compute() {
+			List<ForkJoinTask<List<ScannedFile>>> subtasks = new ArrayList<>();
+			List<ScannedFile> result = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+				for (Path entry : entries) {
+					String name = entry.getFileName().toString();
+					if (name.startsWith(".")) {
+						continue;
+					}
+					if (Files.isDirectory(entry)) {
+						subtasks.add(new DirectoryTask(entry, bytesHashed).fork());
+					}
+					else if (name.endsWith(JAR_SUFFIX)) {
+						subtasks.add(new JarTask(entry, bytesHashed).fork());
+					}
+					else if (name.endsWith(JAR_SUFFIX + PART_SUFFIX)) {
+						result.add(new ScannedFile(relativize(entry)));
+					}
+				}
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			for (ForkJoinTask<List<ScannedFile>> subtask : subtasks) {
+				result.addAll(subtask.join());
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Reads the maven coordinates of a jar and verifies its recorded digests.
+	 */
+	private class JarTask extends RecursiveTask<List<ScannedFile>> {
+
+		private final Path path;
+
+		private final AtomicLong bytesHashed;
+
+		JarTask(Path path, AtomicLong bytesHashed) {
+			this.path = path;
+			this.bytesHashed = bytesHashed;
+		}
+
+		@Override
+		protected List<ScannedFile> compute() {
+			ScannedFile jar = new ScannedFile(relativize(path));
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				jar.size = attributes.size();
+				jar.lastModified = attributes.lastModifiedTime().toMillis();
+				jar.poms = readPoms(path);
+				ArtifactState state = jar.isNested() ? null : artifactStateStore.get(jar.filename);
+				if (state != null) {
+					jar.problem = verify(state);
+				}
+			}
+			catch (ZipException e) {
+				jar.problem = "not a readable jar: " + e.getMessage();
+			}
+			catch (IOException e) {
+				jar.problem = e.getMessage();
+			}
+			catch (RuntimeException e) {
+				// e.g. a malformed unicode escape in a pom.properties, which must not stop the whole check
+				jar.problem = "not a readable jar: " + e;
+			}
+			return Collections.singletonList(jar);
+		}
+
+		private String verify(ArtifactState state) throws IOException {
+			if (state.getContentLength() >= 0 && state.getContentLength() != Files.size(path)) {
+				return String.format("size %d does not match the recorded %d", Files.size(path),
+					state.getContentLength());
+			}
+			Map<String, String> expected = new HashMap<>();
+			if (StringUtils.hasText(state.getSha1())) {
+				expected.put("SHA-1", state.getSha1());
+			}
+			if (StringUtils.hasText(state.getSha256())) {
+				expected.put("SHA-256", state.getSha256());
+			}
+			if (expected.isEmpty()) {
+				return null;
+			}
+			Map<String, String> actual = digest(expected.keySet());
+			for (Map.Entry<String, String> entry : expected.entrySet()) {
+				if (!entry.getValue().equalsIgnoreCase(actual.get(entry.getKey()))) {
+					return String.format("%s %s does not match the recorded %s", entry.getKey(),
+						actual.get(entry.getKey()), entry.getValue());
+				}
+			}
+			return null;
+		}
+
+		private Map<String, String> digest(Iterable<String> algorithms) throws IOException {
+			Map<String, MessageDigest> digests = new HashMap<>();
+			try {
+				for (String algorithm : algorithms) {
+					digests.put(algorithm, MessageDigest.getInstance(algorithm));
+				}
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				int read;
+				while ((read = channel.read(buffer)) >= 0) {
+					buffer.flip();
+					for (MessageDigest digest : digests.values()) {
+						buffer.mark();
+						digest.update(buffer);
+						buffer.reset();
+					}
+					buffer.clear();
+					bytesHashed.addAndGet(read);
+				}
+			}
+			Map<String, String> result = new HashMap<>();
+			digests.forEach((algorithm, digest) -> result.put(algorithm, toHex(digest.digest())));
+			return result;
+		}
+	}
+
+	private static List<Properties> readPoms(Path path) throws IOException {
+		List<Properties> poms = new ArrayList<>();
+		try (ZipFile zipFile = new ZipFile(path.toFile())) {
+			for (ZipEntry entry : Collections.list(zipFile.entries())) {
+				if (POM_PROPERTIES.matcher(entry.getName()).matches()) {
+					Properties pom = new Properties();
+					try (InputStream in = zipFile.getInputStream(entry)) {
+						pom.load(in);
+					}
+					poms.add(pom);
+				}
+			}
+		}
+		String filename = path.getFileName().toString();
+		// a shaded jar carries the pom.properties of its dependencies too, so try its own artifact first
+		poms.sort((a, b) -> Boolean.compare(!filename.startsWith(a.getProperty("artifactId", "") + "-"),
+			!filename.startsWith(b.getProperty("artifactId", "") + "-")));
+		return poms;
+	}
+
+	private String relativize(Path path) {
+		return StringUtils.cleanPath(Paths.get(directory).relativize(path).toString());
+	}
+
+	private static class ScannedFile {
+
+		private final String filename;
+
+		private List<Properties> poms = Collections.emptyList();
+
+		private String problem;
+
+		private long size = -1L;
+
+		private long lastModified = -1L;
+
+		/**
+		 * @param filename the path relative to the repository directory
+		 */
+		ScannedFile(String filename) {
+			this.filename = filename;
+		}
+
+		/**
+		 * @return true if the file still has the size and modification time it was scanned with, or no longer exists
+		 */
+		boolean isUnchanged(Path path) throws IOException {
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			}
+			catch (NoSuchFileException e) {
+				return true;
+			}
+			return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+		}
+
+		boolean isNested() {
+			return filename.indexOf('/') >= 0;
+		}
+
+		boolean isPart() {
+			return filename.endsWith(PART_SUFFIX);
+		}
+
+		boolean isMetadata() {
+			return filename.endsWith(METADATA_SUFFIX);
+		}
+	}
+}
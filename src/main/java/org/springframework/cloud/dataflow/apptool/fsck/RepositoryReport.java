@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.fsck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The findings of a {@link RepositoryChecker} run, each sorted by file name.
+ **/
+public class RepositoryReport {
+
+	private final List<String> verified = new ArrayList<>();
+
+	private final List<String> missing = new ArrayList<>();
+
+	private final Map<String, String> corrupt = new TreeMap<>();
+
+	private final Map<String, String> unindexed = new TreeMap<>();
+
+	private final Map<String, String> unresolved = new TreeMap<>();
+
+	private final List<String> partial = new ArrayList<>();
+
+	private final List<String> changed = new ArrayList<>();
+
+	private int scanned;
+
+	private long bytesHashed;
+
+	private long elapsedNanos;
+
+	void verified(String filename) {
+		verified.add(filename);
+	}
+
+	void missing(String filename) {
+		missing.add(filename);
+	}
+
+	void corrupt(String filename, String reason) {
+		corrupt.put(filename, reason);
+	}
+
+	void unindexed(String key, String filename) {
+		unindexed.put(key, filename);
+	}
+
+	void unresolved(String filename, String reason) {
+		unresolved.put(filename, reason);
+	}
+
+	void partial(String filename) {
+		partial.add(filename);
+	}
+
+	void changed(String filename) {
+		changed.add(filename);
+	}
+
+	void setScanned(int scanned, long bytesHashed, long elapsedNanos) {
+		this.scanned = scanned;
+		this.bytesHashed = bytesHashed;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return indexed jars that are readable and match their recorded digests, if any
+	 */
+	public List<String> getVerified() {
+		return sorted(verified);
+	}
+
+	/**
+	 * @return indexed file names that do not exist
+	 */
+	public List<String> getMissing() {
+		return sorted(missing);
+	}
+
+	/**
+	 * @return the reason each unreadable or modified jar is corrupt, by file name
+	 */
+	public Map<String, String> getCorrupt() {
+		return Collections.unmodifiableMap(corrupt);
+	}
+
+	/**
+	 * @return the derived key of each jar missing from the index, by key
+	 */
+	public Map<String, String> getUnindexed() {
+		return Collections.unmodifiableMap(unindexed);
+	}
+
+	/**
+	 * @return the reason each jar missing from the index could not be indexed, by file name
+	 */
+	public Map<String, String> getUnresolved() {
+		return Collections.unmodifiableMap(unresolved);
+	}
+
+	/**
+	 * @return '.part' files left by interrupted downloads, which the next download of the artifact resumes
+	 */
+	public List<String> getPartial() {
+		return sorted(partial);
+	}
+
+	/**
+	 * @return corrupt jars that changed on disk after they were checked, which the repair left in place
+	 */
+	public List<String> getChanged() {
+		return sorted(changed);
+	}
+
+	public boolean isConsistent() {
+		return missing.isEmpty() && corrupt.isEmpty() && unindexed.isEmpty() && unresolved.isEmpty();
+	}
+
+	public String summary() {
+		return String.format("checked %d jars, hashed %d MB in %d ms: %d missing, %d corrupt, %d unindexed, "
+				+ "%d unresolved, %d partial downloads", scanned, bytesHashed / (1024 * 1024),
+			TimeUnit.NANOSECONDS.toMillis(elapsedNanos), missing.size(), corrupt.size(), unindexed.size(),
+			unresolved.size(), partial.size());
+	}
+
+	private static List<String> sorted(List<String> filenames) {
+		List<String> result = new ArrayList<>(filenames);
+		Collections.sort(result);
+		return Collections.unmodifiableList(result);
+	}
+}
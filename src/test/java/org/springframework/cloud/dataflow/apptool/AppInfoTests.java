@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class AppInfoTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private String repoDirectory;
+
+	private Path appInfoFile;
+
+	private Path journalFile;
+
+	private String mavenRepoUrl = "https://my.repo";
+
+	@Before
+	public void setUp() throws IOException {
+		repoDirectory = temporaryFolder.newFolder("repo").getPath();
+		appInfoFile = temporaryFolder.getRoot().toPath().resolve("repo/app-info.properties");
+		journalFile = temporaryFolder.getRoot().toPath().resolve("repo/app-info.journal");
+	}
+
+	@Test
+	public void changesAreWrittenOnFlush() throws IOException {
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(100, 0);
+		appInfo.add(new AppResource("source.time",
+			"maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		assertThat(appInfoFile).doesNotExist();
+		assertThat(appInfo.findByNameAndType("log", "sink")).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+
+		appInfo.flush();
+
+		assertThat(snapshot()).containsExactly("sink.log=log-sink-kafka-2.1.0.RELEASE.jar",
+			"source.time=time-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(new AppInfo(repoDirectory).findAll()).containsExactly("sink.log=log-sink-kafka-2.1.0.RELEASE.jar",
+			"source.time=time-source-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void journalIsReplayedWithoutFlush() throws IOException {
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(100, 0);
+		appInfo.add(new AppResource("source.time",
+			"maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.remove("time-source-kafka-2.1.0.RELEASE.jar");
+		// a record torn by the process being killed mid-write
+		Files.write(journalFile, "+sink.jdbc=jdbc-si".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		AppInfo recovered = new AppInfo(repoDirectory);
+
+		assertThat(recovered.findAll()).containsExactly("sink.log=log-sink-kafka-2.1.0.RELEASE.jar");
+		recovered.flush();
+		assertThat(snapshot()).containsExactly("sink.log=log-sink-kafka-2.1.0.RELEASE.jar");
+		assertThat(journalFile).hasContent("");
+	}
+
+	@Test
+	public void findByNameAndTypePatterns() {
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(100, 0);
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("sink.log.metadata",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:jar:metadata:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("sink.jdbc",
+			"maven://org.springframework.cloud.stream.app:jdbc-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("source.jdbc",
+			"maven://org.springframework.cloud.stream.app:jdbc-source-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		assertThat(appInfo.findByNameAndType("*", "sink")).containsExactlyInAnyOrder(
+			"log-sink-kafka-2.1.0.RELEASE.jar", "log-sink-kafka-2.1.0.RELEASE-metadata.jar",
+			"jdbc-sink-kafka-2.1.0.RELEASE.jar");
+		assertThat(appInfo.findByNameAndType("jdbc", "*")).containsExactlyInAnyOrder(
+			"jdbc-sink-kafka-2.1.0.RELEASE.jar", "jdbc-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(appInfo.findByNameAndType("l*g", "s*k")).containsExactlyInAnyOrder(
+			"log-sink-kafka-2.1.0.RELEASE.jar", "log-sink-kafka-2.1.0.RELEASE-metadata.jar");
+		assertThat(appInfo.findByNameAndType("time", "source")).isEmpty();
+
+		appInfo.remove("log-sink-kafka-2.1.0.RELEASE.jar");
+
+		assertThat(appInfo.findByNameAndType("log", "sink")).containsExactly(
+			"log-sink-kafka-2.1.0.RELEASE-metadata.jar");
+		assertThat(appInfo.matches("s*", "jdbc", "source.jdbc")).isTrue();
+		assertThat(appInfo.matches("sink", "jdbc", "source.jdbc")).isFalse();
+	}
+
+	@Test
+	public void batchIsCompactedOnceOnCommit() throws IOException {
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(2, 0);
+		appInfo.begin();
+		appInfo.add(new AppResource("source.time",
+			"maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("sink.jdbc",
+			"maven://org.springframework.cloud.stream.app:jdbc-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		assertThat(appInfoFile).doesNotExist();
+
+		appInfo.commit();
+
+		assertThat(snapshot()).hasSize(3);
+
+		appInfo.removeAll(Arrays.asList("log-sink-kafka-2.1.0.RELEASE.jar", "jdbc-sink-kafka-2.1.0.RELEASE.jar"));
+
+		assertThat(snapshot()).containsExactly(
+			"source.time=time-source-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void flushAfterMaxPendingChanges() throws InterruptedException {
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(2, 0);
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		assertThat(appInfoFile).doesNotExist();
+
+		appInfo.remove("log-sink-kafka-2.1.0.RELEASE.jar");
+
+		awaitSnapshot();
+		assertThat(new AppInfo(repoDirectory).findAll()).isEmpty();
+	}
+
+	@Test
+	public void flushAfterInterval() throws InterruptedException {
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(100, 50);
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		awaitSnapshot();
+
+		assertThat(new AppInfo(repoDirectory).findAllAsMap()).containsEntry("sink.log",
+			"log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void processesSharingTheRepositorySeeEachOthersChanges() throws IOException {
+		AppInfo first = new AppInfo(repoDirectory);
+		first.setFlushPolicy(100, 0);
+		AppInfo second = new AppInfo(repoDirectory);
+		second.setFlushPolicy(100, 0);
+		first.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		assertThat(second.findByNameAndType("log", "sink")).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+
+		second.add(new AppResource("sink.jdbc",
+			"maven://org.springframework.cloud.stream.app:jdbc-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		second.flush();
+		first.add(new AppResource("source.time",
+			"maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		first.flush();
+
+		assertThat(Files.readAllLines(appInfoFile).get(0)).startsWith("#version=");
+		assertThat(snapshot()).containsExactly("sink.jdbc=jdbc-sink-kafka-2.1.0.RELEASE.jar",
+			"sink.log=log-sink-kafka-2.1.0.RELEASE.jar", "source.time=time-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(second.findAll()).isEqualTo(first.findAll());
+	}
+
+	@Test
+	public void replaceAllPointsKeysAtNewVersions() {
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(100, 0);
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		appInfo.add(new AppResource("source.time",
+			"maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		appInfo.begin();
+		assertThat(appInfo.replaceAll(Arrays.asList(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.1.RELEASE", mavenRepoUrl),
+			new AppResource("source.time",
+				"maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE", mavenRepoUrl))))
+			.containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+
+		assertThat(appInfo.findByNameAndType("log", "sink")).containsExactly("log-sink-kafka-2.1.1.RELEASE.jar");
+		assertThat(new AppInfo(repoDirectory).findAll()).containsExactly("sink.log=log-sink-kafka-2.1.1.RELEASE.jar",
+			"source.time=time-source-kafka-2.1.0.RELEASE.jar");
+		appInfo.commit();
+	}
+
+	@Test(timeout = 60000)
+	public void lockHeldByAnotherProcessTimesOutWithAnError() throws Exception {
+		Path lockFile = FileLocks.lockFile(repoDirectory, "app-info");
+		Files.createDirectories(lockFile.getParent());
+		Process holder = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+			"-cp", System.getProperty("java.class.path"), LockHolder.class.getName(), lockFile.toString()).start();
+		try {
+			BufferedReader out = new BufferedReader(new InputStreamReader(holder.getInputStream(),
+				StandardCharsets.UTF_8));
+			assertThat(out.readLine()).isEqualTo("locked");
+
+			AppInfo appInfo = new AppInfo(repoDirectory);
+			appInfo.setFlushPolicy(100, 0);
+			appInfo.setLockTimeout(200L);
+			assertThatThrownBy(() -> appInfo.add(new AppResource("sink.log",
+				"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl)))
+				.isInstanceOf(UncheckedIOException.class).hasMessageContaining("timed out");
+			// what the context does on exit, which must not hang
+			appInfo.close();
+		}
+		finally {
+			holder.destroy();
+			holder.waitFor();
+		}
+
+		AppInfo appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(100, 0);
+		appInfo.add(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		assertThat(appInfo.findAll()).containsExactly("sink.log=log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	private List<String> snapshot() throws IOException {
+		return Files.readAllLines(appInfoFile).stream().filter(line -> !line.startsWith("#"))
+			.collect(Collectors.toList());
+	}
+
+	private void awaitSnapshot() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!Files.exists(appInfoFile) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Holds the lock file named by the first argument, as another tool process would, until it is killed.
+	 */
+	public static class LockHolder {
+
+		public static void main(String[] args) throws Exception {
+			try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE)) {
+				channel.lock();
+				System.out.println("locked");
+				System.out.flush();
+				Thread.sleep(Long.MAX_VALUE);
+			}
+		}
+	}
+}
@@ -17,6 +17,7 @@
 package org.springframework.cloud.dataflow.apptool;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 import org.junit.Test;
 
@@ -57,6 +58,40 @@ public class AppResourceTests {
 		assertThat(appResource.getFilename()).isEqualTo("cassandra-sink-rabbit-1.3.1.RELEASE-metadata.jar");
 	}
 
+	@Test
+	public void coordinatesWithExtensionOnly() {
+		AppResource appResource = new AppResource("task.timestamp",
+			"maven://org.springframework.cloud.task.app:timestamp-task:zip:2.1.0.RELEASE", mavenRepoUrl);
+
+		assertThat(appResource.getFilename()).isEqualTo("timestamp-task-2.1.0.RELEASE.zip");
+		assertThat(appResource.getUrl().toString()).isEqualTo("https://my.repo/org/springframework/cloud/task/app"
+			+ "/timestamp-task/2.1.0.RELEASE/timestamp-task-2.1.0.RELEASE.zip");
+		assertThat(appResource.isMavenArtifact()).isTrue();
+	}
+
+	@Test
+	public void badCoordinates() {
+		assertThatThrownBy(() -> new AppResource("sink.log", "maven://org.springframework.cloud.stream.app:log-sink",
+			mavenRepoUrl)).isInstanceOf(IllegalArgumentException.class).hasMessageStartingWith(
+			"Bad artifact coordinates");
+		assertThatThrownBy(() -> new AppResource("sink.log", "maven://g:a:jar::1.0", mavenRepoUrl))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new AppResource("sink", jar, mavenRepoUrl))
+			.isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid property key [sink]");
+		assertThatThrownBy(() -> new AppResource("source.", jar, mavenRepoUrl))
+			.isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid property key [source.]");
+		assertThatThrownBy(() -> new AppResource("source..metadata", metadata, mavenRepoUrl))
+			.isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid property key [source..metadata]");
+	}
+
+	@Test
+	public void unresolvableUrl() {
+		AppResource appResource = new AppResource("sink.cassandra", jar, "my.repo");
+
+		assertThatThrownBy(appResource::getUrl).isInstanceOf(IllegalStateException.class)
+			.hasMessageContaining(jar).hasMessageContaining("sink.cassandra");
+	}
+
 	@Test
 	public void customUrl() {
 		AppResource appResource = new AppResource("source.my-test","https://github"
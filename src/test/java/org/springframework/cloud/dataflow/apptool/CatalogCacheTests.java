@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class CatalogCacheTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final String mavenRepoUrl = "https://my.repo";
+
+	private Path catalogFile;
+
+	@Before
+	public void setUp() throws IOException {
+		catalogFile = temporaryFolder.getRoot().toPath().resolve("kafka-stream-apps.properties");
+		write("sink.log=maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE",
+			"sink.log.metadata=maven://org.springframework.cloud.stream.app:log-sink-kafka:jar:metadata:2.1.0.RELEASE",
+			"source.time=maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE");
+	}
+
+	@Test
+	public void catalogIsIndexedByTypeAndName() throws IOException {
+		Catalog catalog = new CatalogCache().get(catalogFile, mavenRepoUrl);
+
+		assertThat(keys(catalog.getApps().stream())).containsExactly("sink.log", "source.time");
+		assertThat(keys(catalog.find("log", "*").stream())).containsExactly("sink.log", "sink.log.metadata");
+		assertThat(keys(catalog.find("*", "source").stream())).containsExactly("source.time");
+		assertThat(catalog.find("log", "sink").get(1).getFilename())
+			.isEqualTo("log-sink-kafka-2.1.0.RELEASE-metadata.jar");
+	}
+
+	@Test
+	public void otherClassifiersAreKeptWithTheirApp() throws IOException {
+		write("sink.log=maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE",
+			"sink.log.metadata=maven://org.springframework.cloud.stream.app:log-sink-kafka:jar:metadata:2.1.0.RELEASE",
+			"sink.log.docs=maven://org.springframework.cloud.stream.app:log-sink-kafka:jar:docs:2.1.0.RELEASE");
+
+		Catalog catalog = new CatalogCache().get(catalogFile, mavenRepoUrl);
+
+		assertThat(keys(catalog.getAppResources().stream())).containsExactly("sink.log", "sink.log.metadata",
+			"sink.log.docs");
+		assertThat(keys(catalog.getApps().stream())).containsExactly("sink.log");
+		assertThat(catalog.find("log", "sink").get(0).getFilename()).isEqualTo("log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void largeCatalogIsStreamed() throws IOException {
+		CatalogCache cache = new CatalogCache();
+		cache.setMaxFileSize(16);
+		List<String> keys = new ArrayList<>();
+
+		cache.find(catalogFile, mavenRepoUrl, "log", "*", a -> keys.add(a.getKey()));
+
+		assertThat(keys).containsExactly("sink.log", "sink.log.metadata");
+		assertThat(CatalogCache.sidecar(catalogFile)).doesNotExist();
+	}
+
+	@Test
+	public void catalogIsCachedUntilTheFileChanges() throws IOException {
+		CatalogCache cache = new CatalogCache();
+		Catalog catalog = cache.get(catalogFile, mavenRepoUrl);
+
+		assertThat(cache.get(catalogFile, mavenRepoUrl)).isSameAs(catalog);
+		assertThat(cache.get(catalogFile, "https://other.repo").getAppResources().get(0).getUrl().toString())
+			.startsWith("https://other.repo/");
+
+		write("sink.log=maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.1.RELEASE");
+
+		assertThat(cache.get(catalogFile, mavenRepoUrl).getAppResources()).extracting(AppResource::getFilename)
+			.containsExactly("log-sink-kafka-2.1.1.RELEASE.jar");
+	}
+
+	@Test
+	public void newProcessLoadsTheSidecar() throws IOException {
+		Catalog compiled = new CatalogCache().get(catalogFile, mavenRepoUrl);
+		assertThat(CatalogCache.sidecar(catalogFile)).exists();
+
+		Catalog loaded = new CatalogCache().get(catalogFile, mavenRepoUrl);
+
+		assertThat(loaded).isNotSameAs(compiled);
+		assertThat(loaded.getAppResources()).extracting(AppResource::getUrl)
+			.isEqualTo(compiled.getAppResources().stream().map(AppResource::getUrl).collect(Collectors.toList()));
+		assertThat(loaded.getAppResources()).extracting(AppResource::isMavenArtifact).containsOnly(true);
+	}
+
+	private void write(String... lines) throws IOException {
+		FileTime previous = Files.exists(catalogFile) ? Files.getLastModifiedTime(catalogFile) : null;
+		Files.write(catalogFile, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+		if (previous != null) {
+			Files.setLastModifiedTime(catalogFile, FileTime.fromMillis(previous.toMillis() + 1000));
+		}
+	}
+
+	private static List<String> keys(Stream<AppResource> appResources) {
+		return appResources.map(AppResource::getKey).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class CatalogReaderTests {
+
+	private final String mavenRepoUrl = "https://my.repo";
+
+	@Test
+	public void linesAreParsedLikeProperties() throws IOException {
+		String catalog = String.join("\r\n",
+			"# comment",
+			"! another comment \\",
+			"",
+			"   sink.log = maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE",
+			"sink.log.metadata:maven://org.springframework.cloud.stream.app:log-sink-kafka:jar:metadata:\\",
+			"    2.1.0.RELEASE",
+			"source.time maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE",
+			"source.my\\u0020http=http://my.repo/http-source-kafka-2.1.0.RELEASE.jar",
+			"processor.filter\t=\tmaven://org.springframework.cloud.stream.app:filter-processor-kafka:2.1.0.RELEASE");
+		Properties properties = new Properties();
+		properties.load(new StringReader(catalog));
+
+		Map<String, String> entries = new LinkedHashMap<>();
+		new CatalogReader("*", "*", mavenRepoUrl).read(new StringReader(catalog),
+			a -> entries.put(a.getKey(), a.getValue()));
+
+		assertThat(entries).hasSize(properties.size());
+		properties.stringPropertyNames().forEach(key -> assertThat(entries).containsEntry(key,
+			properties.getProperty(key)));
+		assertThat(entries.keySet()).containsExactly("sink.log", "sink.log.metadata", "source.time", "source.my http",
+			"processor.filter");
+	}
+
+	@Test
+	public void onlyMatchingEntriesAreHandedOver() throws IOException {
+		StringBuilder catalog = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			catalog.append(String.format("sink.app%d=maven://org.springframework.cloud.stream.app:app%d-sink-kafka:"
+				+ "2.1.0.RELEASE%n", i, i));
+			catalog.append(String.format("source.app%d=maven://org.springframework.cloud.stream.app:app%d-source-kafka:"
+				+ "2.1.0.RELEASE%n", i, i));
+		}
+
+		List<String> keys = new ArrayList<>();
+		new CatalogReader("app99*", "sink", mavenRepoUrl).read(new StringReader(catalog.toString()),
+			a -> keys.add(a.getKey()));
+
+		assertThat(keys).containsExactly("sink.app99", "sink.app990", "sink.app991", "sink.app992", "sink.app993",
+			"sink.app994", "sink.app995", "sink.app996", "sink.app997", "sink.app998", "sink.app999");
+	}
+
+	@Test
+	public void lastEntryForAKeyWins() throws IOException {
+		String catalog = String.join("\n",
+			"source.time=maven://org.springframework.cloud.stream.app:time-source-kafka:2.0.0.RELEASE",
+			"sink.log=maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE",
+			"source.time=maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE");
+		Properties properties = new Properties();
+		properties.load(new StringReader(catalog));
+
+		List<AppResource> entries = new ArrayList<>();
+		new CatalogReader("*", "*", mavenRepoUrl).read(new StringReader(catalog), entries::add);
+
+		assertThat(entries).extracting(AppResource::getKey).containsExactly("source.time", "sink.log");
+		assertThat(entries).extracting(AppResource::getValue).containsExactly(properties.getProperty("source.time"),
+			properties.getProperty("sink.log"));
+	}
+}
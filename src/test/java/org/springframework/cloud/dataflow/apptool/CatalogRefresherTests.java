@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.cloud.dataflow.apptool.download.TransferClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class CatalogRefresherTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private HttpServer server;
+
+	private TransferClient transferClient;
+
+	private CatalogRefresher catalogRefresher;
+
+	private volatile String catalog;
+
+	private volatile String etag;
+
+	private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this::serve);
+		server.start();
+		transferClient = new TransferClient(4, 4, 1000, 1000);
+		Path configDirectory = temporaryFolder.newFolder("config").toPath();
+		catalogRefresher = new CatalogRefresher(configDirectory.toString(), Collections.singletonMap(
+			"kafka-stream-apps", new URL(String.format("http://localhost:%d/kafka-maven-latest",
+				server.getAddress().getPort()))), transferClient);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		transferClient.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void unchangedCatalogIsNotFetchedAgain() {
+		publish("\"v1\"", "sink.log=maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE");
+
+		CatalogRefresher.Result first = catalogRefresher.refresh().get(0);
+
+		assertThat(first.isModified()).isTrue();
+		assertThat(first.getDiff().getAdded()).containsEntry("sink.log", "2.1.0.RELEASE");
+		assertThat(catalogRefresher.catalogFile("kafka-stream-apps")).hasContent(catalog);
+
+		CatalogRefresher.Result second = catalogRefresher.refresh().get(0);
+
+		assertThat(second.isModified()).isFalse();
+		assertThat(second.getFailure()).isNull();
+		assertThat(statuses).containsExactly(200, 304);
+	}
+
+	@Test
+	public void changesAreDiffed() {
+		publish("\"v1\"", "sink.log=maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE",
+			"sink.log.metadata=maven://org.springframework.cloud.stream.app:log-sink-kafka:jar:metadata:2.1.0.RELEASE",
+			"sink.jdbc=maven://org.springframework.cloud.stream.app:jdbc-sink-kafka:2.1.0.RELEASE",
+			"source.time=maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE");
+		catalogRefresher.refresh();
+		publish("\"v2\"", "sink.log=maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.1.RELEASE",
+			"sink.log.metadata=maven://org.springframework.cloud.stream.app:log-sink-kafka:jar:metadata:2.1.1.RELEASE",
+			"source.time=maven://org.springframework.cloud.stream.app:time-source-kafka:2.1.0.RELEASE",
+			"source.http=maven://org.springframework.cloud.stream.app:http-source-kafka:2.1.0.RELEASE");
+
+		CatalogDiff diff = catalogRefresher.refresh().get(0).getDiff();
+
+		assertThat(diff.lines()).containsExactly("+ source.http 2.1.0.RELEASE", "- sink.jdbc 2.1.0.RELEASE",
+			"~ sink.log 2.1.0.RELEASE -> 2.1.1.RELEASE");
+		assertThat(diff.getKeysToDownload()).containsExactly("source.http", "source.http.metadata", "sink.log",
+			"sink.log.metadata");
+	}
+
+	private void publish(String etag, String... entries) {
+		this.etag = etag;
+		this.catalog = String.join("\n", entries);
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			statuses.add(304);
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		byte[] body = catalog.getBytes(StandardCharsets.UTF_8);
+		statuses.add(200);
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
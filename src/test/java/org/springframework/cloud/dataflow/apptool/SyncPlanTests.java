@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SyncPlanTests {
+
+	private String mavenRepoUrl = "https://my.repo";
+
+	@Test
+	public void onlyNewChangedAndMissingEntriesAreDownloaded() {
+		List<AppResource> target = Arrays.asList(
+			app("sink.log", "log-sink-kafka:2.1.1.RELEASE"),
+			app("source.time", "time-source-kafka:2.1.0.RELEASE"),
+			app("source.http", "http-source-kafka:2.1.0.RELEASE"),
+			app("processor.filter", "filter-processor-kafka:2.1.0.RELEASE"));
+		Map<String, String> indexed = new HashMap<>();
+		indexed.put("sink.log", "log-sink-kafka-2.1.0.RELEASE.jar");
+		indexed.put("source.time", "time-source-kafka-2.1.0.RELEASE.jar");
+		indexed.put("processor.filter", "filter-processor-kafka-2.1.0.RELEASE.jar");
+		indexed.put("sink.jdbc", "jdbc-sink-kafka-2.1.0.RELEASE.jar");
+		indexed.put("task.timestamp", "timestamp-task-2.1.0.RELEASE.jar");
+
+		SyncPlan plan = SyncPlan.compute(target, indexed,
+			filename -> !filename.startsWith("filter-processor"), key -> !key.startsWith("task."));
+
+		assertThat(plan.getToDownload()).extracting(AppResource::getKey)
+			.containsExactly("sink.log", "source.http", "processor.filter");
+		assertThat(plan.getUnchanged()).isEqualTo(1);
+		assertThat(plan.getUnlisted()).containsOnlyKeys("sink.jdbc");
+		assertThat(plan.getReplacedFilenames()).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void appsAddedOutsideTheCatalogAreNeverPruned() {
+		List<AppResource> target = Arrays.asList(
+			app("sink.log", "log-sink-kafka:2.1.1.RELEASE"),
+			app("source.time", "time-source-kafka:2.1.1.RELEASE"));
+		Map<String, String> indexed = new HashMap<>();
+		indexed.put("sink.log", "log-sink-kafka-2.1.0.RELEASE.jar");
+		indexed.put("source.time", "time-source-kafka-2.1.0.RELEASE.jar");
+		indexed.put("sink.mine", "my-sink-1.0.0.jar");
+		indexed.put("source.ticktock", "time-source-kafka-2.1.0.RELEASE.jar");
+
+		SyncPlan plan = SyncPlan.compute(target, indexed, filename -> true, key -> true);
+
+		assertThat(plan.getUnlisted()).containsOnlyKeys("sink.mine", "source.ticktock");
+		assertThat(plan.getReplacedFilenames()).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	private AppResource app(String key, String coordinates) {
+		return new AppResource(key, "maven://org.springframework.cloud.stream.app:" + coordinates, mavenRepoUrl);
+	}
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.cloud.dataflow.apptool.AppInfo;
+import org.springframework.cloud.dataflow.apptool.AppResource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AppResourceDownloaderTests {
+
+	private static final String ARTIFACT_PATH =
+		"/org/springframework/cloud/stream/app/log-sink-kafka/2.1.0.RELEASE/log-sink-kafka-2.1.0.RELEASE.jar";
+
+	private static final String COORDINATES =
+		"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE";
+
+	private static final String ETAG = "\"5d0a2b1c-10000\"";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor = Executors.newCachedThreadPool();
+
+	private byte[] content;
+
+	private String checksum;
+
+	private List<String> rangeHeaders = new CopyOnWriteArrayList<>();
+
+	private List<String> requests = new CopyOnWriteArrayList<>();
+
+	private List<String> ifRangeHeaders = new CopyOnWriteArrayList<>();
+
+	private long probeDelayMillis;
+
+	private long responseDelayMillis;
+
+	private long bodyDelayMillis;
+
+	private boolean acceptRanges = true;
+
+	private boolean sendValidators = true;
+
+	private Path repoDirectory;
+
+	private AppInfo appInfo;
+
+	private ArtifactStateStore artifactStateStore;
+
+	private TransferClient transferClient;
+
+	private MirrorSelector mirrorSelector;
+
+	private AppResourceDownloader appResourceDownloader;
+
+	private AppResource appResource;
+
+	@Before
+	public void setUp() throws IOException {
+		content = new byte[64 * 1024];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this::serve);
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		repoDirectory = temporaryFolder.newFolder("repo").toPath();
+		appInfo = new AppInfo(repoDirectory.toString());
+		artifactStateStore = new ArtifactStateStore(repoDirectory.toString());
+		transferClient = new TransferClient(4, 4, 1000, 1000);
+		mirrorSelector = new MirrorSelector(new String[] { baseUrl(server) }, transferClient);
+		appResourceDownloader = new AppResourceDownloader(repoDirectory.toString(),
+			appInfo, artifactStateStore, transferClient, mirrorSelector);
+		appResource = new AppResource("sink.log", COORDINATES, baseUrl(server));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		transferClient.close();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void download() throws IOException {
+		appResourceDownloader.accept(appResource);
+
+		assertThat(Files.readAllBytes(repoDirectory.resolve(appResource.getFilename()))).isEqualTo(content);
+		assertThat(repoDirectory.resolve(appResource.getFilename() + AppResourceDownloader.PART_SUFFIX)).doesNotExist();
+		appInfo.flush();
+		assertThat(new AppInfo(repoDirectory.toString()).findAllAsMap())
+			.containsEntry("sink.log", appResource.getFilename());
+	}
+
+	@Test
+	public void resumeFromPartialDownload() throws IOException {
+		partialDownload(Arrays.copyOf(content, 1000), ETAG);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(rangeHeaders).containsExactly("bytes=1000-");
+		assertThat(ifRangeHeaders).containsExactly(ETAG);
+		assertThat(Files.readAllBytes(repoDirectory.resolve(appResource.getFilename()))).isEqualTo(content);
+		assertThat(partValidator()).doesNotExist();
+	}
+
+	@Test
+	public void resumeAgainstChangedArtifactStartsOver() throws IOException {
+		byte[] previous = new byte[1000];
+		Arrays.fill(previous, (byte) 0x7f);
+		partialDownload(previous, "\"5c3dc6a8-fa00\"");
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(ifRangeHeaders).containsExactly("\"5c3dc6a8-fa00\"");
+		assertThat(Files.readAllBytes(repoDirectory.resolve(appResource.getFilename()))).isEqualTo(content);
+		assertThat(partValidator()).doesNotExist();
+	}
+
+	@Test
+	public void partialDownloadWithoutValidatorIsNotResumed() throws IOException {
+		Files.write(repoDirectory.resolve(appResource.getFilename() + AppResourceDownloader.PART_SUFFIX),
+			new byte[1000]);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(rangeHeaders).isEmpty();
+		assertThat(Files.readAllBytes(repoDirectory.resolve(appResource.getFilename()))).isEqualTo(content);
+	}
+
+	@Test
+	public void unchangedArtifactIsNotTransferredAgain() throws IOException {
+		appResourceDownloader.accept(appResource);
+		artifactStateStore.flush();
+
+		ArtifactStateStore reloaded = new ArtifactStateStore(repoDirectory.toString());
+		assertThat(reloaded.get(appResource.getFilename()).getEtag()).isEqualTo(ETAG);
+		assertThat(reloaded.get(appResource.getFilename()).getContentLength()).isEqualTo(content.length);
+
+		AppResourceDownloader second = new AppResourceDownloader(repoDirectory.toString(),
+			new AppInfo(repoDirectory.toString()), reloaded, transferClient, mirrorSelector);
+		DownloadMetrics metrics = new DownloadMetrics();
+		second.setMetrics(metrics);
+		second.accept(appResource);
+
+		assertThat(requests).containsExactly("GET", "GET 304");
+		assertThat(metrics.getRegistry().find(DownloadMetrics.PREFIX + "ttfb").timer()).isNull();
+		assertThat(metrics.getRegistry().get(DownloadMetrics.PREFIX + "duration").tag("outcome", "up_to_date")
+			.timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void timeToFirstByteWaitsForTheContent() {
+		bodyDelayMillis = 300;
+		DownloadMetrics metrics = new DownloadMetrics();
+		appResourceDownloader.setMetrics(metrics);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(metrics.getRegistry().get(DownloadMetrics.PREFIX + "ttfb").timer().max(TimeUnit.MILLISECONDS))
+			.isGreaterThanOrEqualTo(300);
+	}
+
+	@Test
+	public void presentArtifactWithoutValidatorsIsProbed() throws IOException {
+		Files.write(repoDirectory.resolve(appResource.getFilename()), content);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(requests).containsExactly("HEAD");
+		assertThat(artifactStateStore.get(appResource.getFilename()).getEtag()).isEqualTo(ETAG);
+	}
+
+	@Test
+	public void presentArtifactIsDownloadedAgainIfTheSourceHasNoValidators() throws IOException {
+		sendValidators = false;
+		Files.write(repoDirectory.resolve(appResource.getFilename()), new byte[content.length]);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(requests).containsExactly("HEAD", "GET");
+		assertThat(Files.readAllBytes(repoDirectory.resolve(appResource.getFilename()))).isEqualTo(content);
+	}
+
+	@Test
+	public void presentArtifactMatchingThePublishedChecksumIsKept() throws Exception {
+		sendValidators = false;
+		checksum = sha1(content);
+		Files.write(repoDirectory.resolve(appResource.getFilename()), content);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(requests).containsExactly("HEAD");
+		assertThat(artifactStateStore.get(appResource.getFilename()).getSha1()).isEqualTo(checksum);
+	}
+
+	@Test
+	public void checksumIsVerifiedAndRecorded() throws Exception {
+		checksum = sha1(content);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(artifactStateStore.get(appResource.getFilename()).getSha1()).isEqualTo(checksum);
+	}
+
+	@Test
+	public void checksumMismatchFailsDownload() throws IOException {
+		checksum = "0000000000000000000000000000000000000000";
+
+		assertThatThrownBy(() -> appResourceDownloader.accept(appResource))
+			.isInstanceOf(UncheckedIOException.class)
+			.hasMessageContaining("SHA-1 checksum mismatch");
+		assertThat(repoDirectory.resolve(appResource.getFilename())).doesNotExist();
+		assertThat(repoDirectory.resolve(appResource.getFilename() + AppResourceDownloader.PART_SUFFIX)).doesNotExist();
+	}
+
+	@Test
+	public void largeArtifactIsFetchedInParallelRanges() throws Exception {
+		checksum = sha1(content);
+		appResourceDownloader.setParallelRanges(4, 1024);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(rangeHeaders).containsExactlyInAnyOrder("bytes=16384-32767", "bytes=32768-49151",
+			"bytes=49152-65535");
+		assertThat(Files.readAllBytes(repoDirectory.resolve(appResource.getFilename()))).isEqualTo(content);
+		assertThat(artifactStateStore.get(appResource.getFilename()).getSha1()).isEqualTo(checksum);
+	}
+
+	@Test
+	public void singleStreamWithoutAcceptRanges() throws IOException {
+		acceptRanges = false;
+		appResourceDownloader.setParallelRanges(4, 1024);
+
+		appResourceDownloader.accept(appResource);
+
+		assertThat(rangeHeaders).isEmpty();
+		assertThat(Files.readAllBytes(repoDirectory.resolve(appResource.getFilename()))).isEqualTo(content);
+	}
+
+	@Test
+	public void failsOverToNextMirror() throws IOException {
+		List<String> failed = new CopyOnWriteArrayList<>();
+		HttpServer failing = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		failing.createContext("/", exchange -> {
+			failed.add(exchange.getRequestMethod());
+			exchange.sendResponseHeaders(exchange.getRequestMethod().equals("HEAD") ? 200 : 503, -1);
+			exchange.close();
+		});
+		failing.start();
+		try {
+			// make the healthy mirror look slower so the failing one is tried first
+			probeDelayMillis = 200;
+			MirrorSelector mirrors = new MirrorSelector(new String[] { baseUrl(failing), baseUrl(server) },
+				transferClient);
+			AppResource resource = new AppResource("sink.log", COORDINATES, baseUrl(failing));
+
+			new AppResourceDownloader(repoDirectory.toString(), new AppInfo(repoDirectory.toString()),
+				artifactStateStore, transferClient, mirrors).accept(resource);
+
+			assertThat(failed).containsExactly("HEAD", "GET");
+			assertThat(Files.readAllBytes(repoDirectory.resolve(resource.getFilename()))).isEqualTo(content);
+			assertThat(mirrors.candidates(resource).get(0).toString()).startsWith(baseUrl(server));
+		}
+		finally {
+			failing.stop(0);
+		}
+	}
+
+	@Test
+	public void mirrorThatSlowsDownLosesItsRank() throws IOException {
+		HttpServer other = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		other.createContext("/", exchange -> {
+			try {
+				Thread.sleep(100L);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		other.start();
+		try {
+			MirrorSelector mirrors = new MirrorSelector(new String[] { baseUrl(server), baseUrl(other) },
+				transferClient);
+			AppResourceDownloader downloader = new AppResourceDownloader(repoDirectory.toString(),
+				new AppInfo(repoDirectory.toString()), artifactStateStore, transferClient, mirrors);
+
+			downloader.accept(appResource);
+			assertThat(mirrors.candidates(appResource).get(0).toString()).startsWith(baseUrl(server));
+
+			// the revalidation of the downloaded artifact now takes much longer than the other mirror's probe
+			responseDelayMillis = 600;
+			downloader.accept(appResource);
+
+			assertThat(requests).containsExactly("GET", "GET 304");
+			assertThat(mirrors.candidates(appResource).get(0).toString()).startsWith(baseUrl(other));
+		}
+		finally {
+			other.stop(0);
+		}
+	}
+
+	private static String baseUrl(HttpServer server) {
+		return String.format("http://localhost:%d", server.getAddress().getPort());
+	}
+
+	private void partialDownload(byte[] bytes, String validator) throws IOException {
+		Files.write(repoDirectory.resolve(appResource.getFilename() + AppResourceDownloader.PART_SUFFIX), bytes);
+		Files.write(partValidator(), validator.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Path partValidator() {
+		return repoDirectory.resolve(appResource.getFilename() + AppResourceDownloader.PART_SUFFIX
+			+ AppResourceDownloader.VALIDATOR_SUFFIX);
+	}
+
+	private static String sha1(byte[] bytes) throws Exception {
+		return String.format("%040x", new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(bytes)));
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		if (checksum != null && exchange.getRequestURI().getPath().equals(ARTIFACT_PATH + ".sha1")) {
+			byte[] body = checksum.getBytes(StandardCharsets.US_ASCII);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+			return;
+		}
+		if (exchange.getRequestURI().getPath().equals("/")) {
+			try {
+				Thread.sleep(probeDelayMillis);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!exchange.getRequestURI().getPath().equals(ARTIFACT_PATH)) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		if (responseDelayMillis > 0) {
+			try {
+				Thread.sleep(responseDelayMillis);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (sendValidators) {
+			exchange.getResponseHeaders().add("ETag", ETAG);
+			exchange.getResponseHeaders().add("Last-Modified", "Tue, 15 Jan 2019 10:00:00 GMT");
+		}
+		if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			requests.add("GET 304");
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		requests.add(exchange.getRequestMethod());
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		if (acceptRanges) {
+			exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		if (ifRange != null) {
+			ifRangeHeaders.add(ifRange);
+		}
+		int start = 0;
+		int end = content.length - 1;
+		if (range != null) {
+			rangeHeaders.add(range);
+		}
+		if (range != null && (ifRange == null || ifRange.equals(ETAG))) {
+			String[] bounds = range.substring("bytes=".length()).split("-");
+			start = Integer.parseInt(bounds[0]);
+			if (bounds.length > 1) {
+				end = Integer.parseInt(bounds[1]);
+			}
+			exchange.getResponseHeaders().add("Content-Range",
+				String.format("bytes %d-%d/%d", start, end, content.length));
+			exchange.sendResponseHeaders(206, end - start + 1);
+		}
+		else {
+			exchange.sendResponseHeaders(200, content.length);
+		}
+		try (OutputStream out = exchange.getResponseBody()) {
+			Thread.sleep(bodyDelayMillis);
+			out.write(content, start, end - start + 1);
+		}
+		catch (IOException e) {
+			// the client abandons the first response of a parallel range download
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.cloud.dataflow.apptool.AppResource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DownloadExecutorTests {
+
+	private String mavenRepoUrl = "https://my.repo";
+
+	@Test
+	public void concurrencyIsBoundedPerHost() {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+
+		DownloadExecutor downloadExecutor = new DownloadExecutor(a -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(20);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			inFlight.decrementAndGet();
+		}, 8, 2);
+
+		for (int i = 0; i < 10; i++) {
+			downloadExecutor.accept(new AppResource("sink.app" + i,
+				"maven://org.springframework.cloud.stream.app:app" + i + "-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		}
+
+		DownloadReport report = downloadExecutor.awaitCompletion();
+		downloadExecutor.shutdown();
+
+		assertThat(report.getResults()).hasSize(10);
+		assertThat(report.getFailures()).isEmpty();
+		assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	public void concurrencyIsBoundedPerSelectedHost() {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		DownloadExecutor downloadExecutor = new DownloadExecutor(a -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			inFlight.decrementAndGet();
+		}, 8, 2, a -> "mirror.repo");
+
+		for (int i = 0; i < 6; i++) {
+			downloadExecutor.accept(new AppResource("sink.app" + i,
+				"maven://org.springframework.cloud.stream.app:app" + i + "-sink-kafka:2.1.0.RELEASE",
+				"https://repo" + i + ".example"));
+		}
+
+		DownloadReport report = downloadExecutor.awaitCompletion();
+		downloadExecutor.shutdown();
+
+		assertThat(report.getResults()).hasSize(6);
+		assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	public void failuresAreCollected() {
+		DownloadExecutor downloadExecutor = new DownloadExecutor(a -> {
+			if (a.getName().equals("bad")) {
+				throw new IllegalStateException("boom");
+			}
+		}, 4, 4);
+
+		downloadExecutor.accept(new AppResource("sink.good",
+			"maven://org.springframework.cloud.stream.app:good-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+		downloadExecutor.accept(new AppResource("sink.bad",
+			"maven://org.springframework.cloud.stream.app:bad-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		DownloadReport report = downloadExecutor.awaitCompletion();
+		downloadExecutor.shutdown();
+
+		assertThat(report.getResults()).hasSize(2);
+		assertThat(report.getFailures()).hasSize(1);
+		assertThat(report.getFailures().get(0).getAppResource().getName()).isEqualTo("bad");
+		assertThat(report.getFailures().get(0).getFailure()).hasMessage("boom");
+		assertThat(report.summary()).isEqualTo("downloaded 1 of 2 artifacts");
+	}
+
+	@Test(timeout = 10000)
+	public void errorsAreCollected() {
+		DownloadExecutor downloadExecutor = new DownloadExecutor(a -> {
+			throw new AssertionError("digest mismatch");
+		}, 2, 2);
+
+		downloadExecutor.accept(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		DownloadReport report = downloadExecutor.awaitCompletion();
+		downloadExecutor.shutdown();
+
+		assertThat(report.getFailures()).hasSize(1);
+		assertThat(report.getFailures().get(0).getFailure()).isInstanceOf(AssertionError.class)
+			.hasMessage("digest mismatch");
+	}
+
+	@Test
+	public void slowHostDoesNotBlockOtherHosts() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch otherHostDone = new CountDownLatch(1);
+
+		DownloadExecutor downloadExecutor = new DownloadExecutor(a -> {
+			if (a.getUrl().getHost().equals("slow.repo")) {
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			else {
+				otherHostDone.countDown();
+			}
+		}, 2, 1);
+
+		for (int i = 0; i < 5; i++) {
+			downloadExecutor.accept(new AppResource("sink.app" + i,
+				"maven://org.springframework.cloud.stream.app:app" + i + "-sink-kafka:2.1.0.RELEASE",
+				"https://slow.repo"));
+		}
+		downloadExecutor.accept(new AppResource("sink.log",
+			"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", mavenRepoUrl));
+
+		assertThat(otherHostDone.await(5, TimeUnit.SECONDS)).isTrue();
+		release.countDown();
+
+		assertThat(downloadExecutor.awaitCompletion().getResults()).hasSize(6);
+		downloadExecutor.shutdown();
+	}
+}
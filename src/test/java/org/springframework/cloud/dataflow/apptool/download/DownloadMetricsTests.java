@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.cloud.dataflow.apptool.AppResource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DownloadMetricsTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final DownloadMetrics metrics = new DownloadMetrics();
+
+	private final AppResource appResource = new AppResource("sink.log",
+		"maven://org.springframework.cloud.stream.app:log-sink-kafka:2.1.0.RELEASE", "https://repo.spring.io/release");
+
+	@Test
+	public void completedDownloadIsTaggedWithTypeAndBinder() {
+		metrics.setBinder("kafka");
+		metrics.timeToFirstByte(appResource, TimeUnit.MILLISECONDS.toNanos(20));
+		metrics.completed(appResource, 1000, TimeUnit.SECONDS.toNanos(2), 1);
+
+		assertThat(metrics.getRegistry().get(DownloadMetrics.PREFIX + "bytes").tag("type", "sink")
+			.tag("binder", "kafka").summary().totalAmount()).isEqualTo(1000);
+		assertThat(metrics.getRegistry().get(DownloadMetrics.PREFIX + "throughput").summary().totalAmount())
+			.isEqualTo(500);
+		assertThat(metrics.getRegistry().get(DownloadMetrics.PREFIX + "retries").counter().count()).isEqualTo(1);
+		assertThat(metrics.getRegistry().get(DownloadMetrics.PREFIX + "duration").tag("outcome", "transferred")
+			.timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void failuresAreTaggedWithReason() {
+		metrics.failed(appResource, new HttpStatusException(503, "Service Unavailable"), 1000, 0);
+
+		assertThat(metrics.getRegistry().get(DownloadMetrics.PREFIX + "failures").tag("reason", "http_503")
+			.tag("binder", "none").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void exportWritesPrometheusText() throws IOException {
+		Path file = temporaryFolder.getRoot().toPath().resolve("metrics/download.prom");
+		metrics.setExportFile(file.toString());
+		metrics.completed(appResource, 1000, TimeUnit.SECONDS.toNanos(1), 0);
+
+		metrics.export();
+
+		assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+			.contains("scdf_apptool_download_bytes_sum{binder=\"none\",type=\"sink\",} 1000.0");
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.download;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RateLimiterTests {
+
+	@Test
+	public void parseRate() {
+		assertThat(RateLimiter.parseRate("20MB")).isEqualTo(20 * 1024 * 1024);
+		assertThat(RateLimiter.parseRate("512KB")).isEqualTo(512 * 1024);
+		assertThat(RateLimiter.parseRate("1000")).isEqualTo(1000);
+		assertThat(RateLimiter.parseRate("")).isEqualTo(0);
+		assertThatThrownBy(() -> RateLimiter.parseRate("fast")).isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("invalid rate 'fast'");
+	}
+
+	@Test
+	public void unlimitedDoesNotWait() throws IOException {
+		RateLimiter rateLimiter = new RateLimiter(0L);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 1000; i++) {
+			rateLimiter.acquire(1024 * 1024);
+		}
+		assertThat(System.currentTimeMillis() - start).isLessThan(500);
+	}
+
+	@Test
+	public void rateIsLimitedAcrossThreads() throws Exception {
+		RateLimiter rateLimiter = new RateLimiter(100 * 1024);
+		Thread[] threads = new Thread[4];
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				try {
+					for (int j = 0; j < 5; j++) {
+						rateLimiter.acquire(2 * 1024);
+					}
+				}
+				catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// 40KB in total at 100KB/s
+		assertThat(System.currentTimeMillis() - start).isBetween(300L, 2000L);
+	}
+
+	@Test
+	public void childIsHeldToItsOwnRateAndItsParents() throws IOException {
+		RateLimiter shared = new RateLimiter(1024 * 1024);
+		RateLimiter command = new RateLimiter(50 * 1024, shared);
+		long start = System.currentTimeMillis();
+		// 20KB at 50KB/s
+		command.acquire(20 * 1024);
+		assertThat(System.currentTimeMillis() - start).isBetween(300L, 2000L);
+
+		start = System.currentTimeMillis();
+		shared.acquire(20 * 1024);
+		assertThat(System.currentTimeMillis() - start).isLessThan(200L);
+		assertThat(shared.getRate()).isEqualTo(1024 * 1024);
+
+		RateLimiter unlimited = new RateLimiter(0L, new RateLimiter(50 * 1024));
+		start = System.currentTimeMillis();
+		unlimited.acquire(20 * 1024);
+		assertThat(System.currentTimeMillis() - start).isBetween(300L, 2000L);
+	}
+}
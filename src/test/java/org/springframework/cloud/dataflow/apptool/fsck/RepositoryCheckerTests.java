@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.springframework.cloud.dataflow.apptool.fsck;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.cloud.dataflow.apptool.AppInfo;
+import org.springframework.cloud.dataflow.apptool.AppResource;
+import org.springframework.cloud.dataflow.apptool.CatalogCache;
+import org.springframework.cloud.dataflow.apptool.download.ArtifactState;
+import org.springframework.cloud.dataflow.apptool.download.ArtifactStateStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RepositoryCheckerTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private String repoDirectory;
+
+	private AppInfo appInfo;
+
+	private ArtifactStateStore artifactStateStore;
+
+	private RepositoryChecker checker;
+
+	@Before
+	public void setUp() throws IOException {
+		repoDirectory = temporaryFolder.newFolder("repo").getPath();
+		appInfo = new AppInfo(repoDirectory);
+		appInfo.setFlushPolicy(100, 0);
+		artifactStateStore = new ArtifactStateStore(repoDirectory);
+		checker = new RepositoryChecker(repoDirectory, appInfo, artifactStateStore, 4);
+	}
+
+	@Test
+	public void appKeyIsTakenFromTheIndex() {
+		Map<String, String> index = new HashMap<>();
+		index.put("task.composed-task-runner", "spring-cloud-dataflow-composed-task-runner-2.0.0.RELEASE.jar");
+		index.put("sink.log", "log-sink-kafka-10-2.1.0.RELEASE.jar");
+		index.put("sink.log.metadata", "log-sink-kafka-10-2.1.0.RELEASE-metadata.jar");
+		index.put("source.time", "time-source-rabbit-2.1.0.BUILD-SNAPSHOT.jar");
+		index.put("source.clock", "time-source-rabbit-2.0.0.RELEASE.jar");
+
+		assertThat(RepositoryChecker.appKey("spring-cloud-dataflow-composed-task-runner", index))
+			.isEqualTo("task.composed-task-runner");
+		assertThat(RepositoryChecker.appKey("log-sink-kafka-10", index)).isEqualTo("sink.log");
+		assertThat(RepositoryChecker.appKey("log-sink-kafka", index)).isNull();
+		assertThat(RepositoryChecker.appKey("time-source-rabbit", index)).isNull();
+		assertThat(RepositoryChecker.appKey("custom", index)).isNull();
+	}
+
+	@Test
+	public void consistentRepository() throws IOException {
+		jar("log-sink-kafka-2.1.0.RELEASE.jar", "log-sink-kafka");
+		appInfo.add(resource("sink.log", "log-sink-kafka"));
+
+		RepositoryReport report = checker.check(true);
+
+		assertThat(report.isConsistent()).isTrue();
+		assertThat(report.getVerified()).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void indexIsRepairedFromDisk() throws IOException {
+		jar("log-sink-kafka-2.1.0.RELEASE.jar", "log-sink-kafka");
+		jar("log-sink-kafka-2.1.0.RELEASE-metadata.jar", null);
+		jar("time-source-kafka-2.1.0.RELEASE.jar", "time-source-kafka");
+		jar("custom-2.1.0.RELEASE.jar", "custom");
+		Files.write(temporaryFolder.getRoot().toPath().resolve("repo/jdbc-sink-kafka-2.1.0.RELEASE.jar.part"),
+			new byte[10]);
+		appInfo.add(resource("sink.jdbc", "jdbc-sink-kafka"));
+		appInfo.add(resource("source.time", "time-source-kafka"));
+		appInfo.add(new AppResource("sink.log", "maven://org.springframework.cloud.stream.app:log-sink-kafka:2.0.0"
+			+ ".RELEASE", "https://my.repo"));
+		artifactStateStore.put("time-source-kafka-2.1.0.RELEASE.jar", new ArtifactState(null, null, -1,
+			"0000000000000000000000000000000000000000", null));
+
+		RepositoryReport dryRun = checker.check(false);
+
+		assertThat(dryRun.getMissing()).containsExactly("jdbc-sink-kafka-2.1.0.RELEASE.jar",
+			"log-sink-kafka-2.0.0.RELEASE.jar");
+		assertThat(dryRun.getCorrupt()).containsOnlyKeys("time-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(dryRun.getUnindexed()).containsEntry("sink.log", "log-sink-kafka-2.1.0.RELEASE.jar")
+			.containsEntry("sink.log.metadata", "log-sink-kafka-2.1.0.RELEASE-metadata.jar").hasSize(2);
+		assertThat(dryRun.getUnresolved()).containsOnlyKeys("custom-2.1.0.RELEASE.jar");
+		assertThat(dryRun.getPartial()).containsExactly("jdbc-sink-kafka-2.1.0.RELEASE.jar.part");
+		assertThat(appInfo.findAll()).hasSize(3);
+
+		checker.check(true);
+
+		assertThat(appInfo.findAll()).containsExactly("sink.log.metadata=log-sink-kafka-2.1.0.RELEASE-metadata.jar",
+			"sink.log=log-sink-kafka-2.1.0.RELEASE.jar");
+		assertThat(temporaryFolder.getRoot().toPath().resolve("repo/time-source-kafka-2.1.0.RELEASE.jar"))
+			.doesNotExist();
+		assertThat(artifactStateStore.get("time-source-kafka-2.1.0.RELEASE.jar")).isNull();
+		assertThat(checker.check(true).getUnresolved()).containsOnlyKeys("custom-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void keyOfAJarWithNoIndexEntryIsTakenFromTheCatalog() throws IOException {
+		Path catalog = temporaryFolder.getRoot().toPath().resolve("kafka-stream-apps.properties");
+		Files.write(catalog, String.format("source.time=maven://org.springframework.cloud.stream.app:"
+			+ "time-source-kafka:2.1.0.RELEASE%nsource.time.metadata=maven://org.springframework.cloud.stream.app:"
+			+ "time-source-kafka:jar:metadata:2.1.0.RELEASE%nsink.log=maven://org.springframework.cloud.stream.app:"
+			+ "log-sink-kafka:2.0.0.RELEASE%n").getBytes(StandardCharsets.UTF_8));
+		checker.setCatalogs(new CatalogCache(), Arrays.asList(catalog,
+			temporaryFolder.getRoot().toPath().resolve("rabbit-stream-apps.properties")), "https://my.repo");
+		jar("time-source-kafka-2.1.0.RELEASE.jar", "time-source-kafka");
+		jar("time-source-kafka-2.1.0.RELEASE-metadata.jar", null);
+		jar("log-sink-kafka-2.1.0.RELEASE.jar", "log-sink-kafka");
+
+		RepositoryReport report = checker.check(true);
+
+		assertThat(report.getUnindexed()).containsEntry("source.time", "time-source-kafka-2.1.0.RELEASE.jar")
+			.containsEntry("source.time.metadata", "time-source-kafka-2.1.0.RELEASE-metadata.jar").hasSize(2);
+		assertThat(report.getUnresolved()).containsOnlyKeys("log-sink-kafka-2.1.0.RELEASE.jar");
+		assertThat(appInfo.findAll()).containsExactly(
+			"source.time.metadata=time-source-kafka-2.1.0.RELEASE-metadata.jar",
+			"source.time=time-source-kafka-2.1.0.RELEASE.jar");
+	}
+
+	@Test
+	public void unreadablePomIsReportedAsCorruption() throws IOException {
+		jar("log-sink-kafka-2.1.0.RELEASE.jar", "log-sink-kafka");
+		appInfo.add(resource("sink.log", "log-sink-kafka"));
+		Path path = temporaryFolder.getRoot().toPath().resolve("repo/time-source-kafka-2.1.0.RELEASE.jar");
+		try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(path))) {
+			jar.putNextEntry(new JarEntry("META-INF/maven/org.springframework.cloud.stream.app/time-source-kafka/"
+				+ "pom.properties"));
+			jar.write("artifactId=time-\\u00zz".getBytes(StandardCharsets.ISO_8859_1));
+		}
+
+		RepositoryReport report = checker.check(false);
+
+		assertThat(report.getCorrupt()).containsOnlyKeys("time-source-kafka-2.1.0.RELEASE.jar");
+		assertThat(report.getVerified()).containsExactly("log-sink-kafka-2.1.0.RELEASE.jar");
+	}
+
+	private AppResource resource(String key, String artifactId) {
+		return new AppResource(key, "maven://org.springframework.cloud.stream.app:" + artifactId + ":2.1.0.RELEASE",
+			"https://my.repo");
+	}
+
+	private void jar(String filename, String artifactId) throws IOException {
+		Path path = temporaryFolder.getRoot().toPath().resolve("repo").resolve(filename);
+		try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(path))) {
+			jar.putNextEntry(new JarEntry("BOOT-INF/classes/application.properties"));
+			jar.write("server.port=8080".getBytes(StandardCharsets.UTF_8));
+			if (artifactId != null) {
+				jar.putNextEntry(new JarEntry(
+					"META-INF/maven/org.springframework.cloud.stream.app/" + artifactId + "/pom.properties"));
+				jar.write(String.format("groupId=org.springframework.cloud.stream.app%nartifactId=%s%nversion=2.1.0"
+					+ ".RELEASE%n", artifactId).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+}